@@ -235,69 +235,82 @@ function appendMessage(content, isAssistant = false, saveToStorage = true) {
 
     let url;
 
+    // format=delta：服务端只输出新增文本，并合并多个 token 后写出一个事件，结束时发送 done 事件
+    // 选择知识库时使用会话式对话，以当前聊天ID作为会话ID，多轮对话复用上下文
     if (ragTag) {
-        url = `http://127.0.0.1:8090/api/v1/${aiModelValue}/generate_stream_rag?message=${encodeURIComponent(message)}&ragTag=${encodeURIComponent(ragTag)}&model=${encodeURIComponent(aiModelModel)}`;
+        url = `http://127.0.0.1:8090/api/v1/${aiModelValue}/chat_stream_rag?message=${encodeURIComponent(message)}&ragTag=${encodeURIComponent(ragTag)}&model=${encodeURIComponent(aiModelModel)}&conversationId=${encodeURIComponent(currentChatId)}&format=delta`;
     } else {
-        url = `http://127.0.0.1:8090/api/v1/${aiModelValue}/generate_stream?message=${encodeURIComponent(message)}&model=${encodeURIComponent(aiModelModel)}`;
+        url = `http://127.0.0.1:8090/api/v1/${aiModelValue}/generate_stream?message=${encodeURIComponent(message)}&model=${encodeURIComponent(aiModelModel)}&format=delta`;
     }
 
     currentEventSource = new EventSource(url);
     let accumulatedContent = '';
     let tempMessageDiv = null;
+    let renderScheduled = false;
+    let finished = false;
+
+    // 每帧最多更新一次文本，避免逐事件重排
+    const scheduleRender = () => {
+        if (renderScheduled) return;
+        renderScheduled = true;
+        requestAnimationFrame(() => {
+            renderScheduled = false;
+            if (!tempMessageDiv || finished) return;
+            // 直接更新文本内容（先不解析Markdown）
+            tempMessageDiv.textContent = accumulatedContent;
+            chatArea.scrollTop = chatArea.scrollHeight;
+        });
+    };
 
     currentEventSource.onmessage = function(event) {
         try {
             const data = JSON.parse(event.data);
-
-            if (data.result?.output?.content) {
-                const newContent = data.result.output.content;
-                accumulatedContent += newContent;
-
-                // 首次创建临时消息容器
-                if (!tempMessageDiv) {
-                    tempMessageDiv = document.createElement('div');
-                    tempMessageDiv.className = 'max-w-4xl mx-auto mb-4 p-4 rounded-lg bg-gray-100 markdown-body relative';
-                    chatArea.appendChild(tempMessageDiv);
-                    welcomeMessage.style.display = 'none';
-                }
-
-                // 直接更新文本内容（先不解析Markdown）
-                tempMessageDiv.textContent = accumulatedContent;
-                chatArea.scrollTop = chatArea.scrollHeight;
-            }
-
-            if (data.result?.output?.properties?.finishReason === 'STOP') {
-                currentEventSource.close();
-
-                // 流式传输完成后进行最终渲染
-                const finalContent = accumulatedContent;
-                tempMessageDiv.innerHTML = DOMPurify.sanitize(marked.parse(finalContent));
-
-                // 添加复制按钮
-                const copyBtn = document.createElement('button');
-                copyBtn.className = 'absolute top-2 right-2 p-1 bg-gray-200 rounded-md text-xs';
-                copyBtn.textContent = '复制';
-                copyBtn.onclick = () => {
-                    navigator.clipboard.writeText(finalContent).then(() => {
-                        copyBtn.textContent = '已复制';
-                        setTimeout(() => copyBtn.textContent = '复制', 2000);
-                    });
-                };
-                tempMessageDiv.appendChild(copyBtn);
-
-                // 保存到本地存储
-                if (currentChatId) {
-                    // 正确的数据结构应该是对象包含messages数组
-                    const chatData = JSON.parse(localStorage.getItem(`chat_${currentChatId}`) || '{"name": "新聊天", "messages": []}');
-                    chatData.messages.push({ content: finalContent, isAssistant: true });
-                    localStorage.setItem(`chat_${currentChatId}`, JSON.stringify(chatData));
-                }
+            if (!data.d) return;
+            accumulatedContent += data.d;
+
+            // 首次创建临时消息容器
+            if (!tempMessageDiv) {
+                tempMessageDiv = document.createElement('div');
+                tempMessageDiv.className = 'max-w-4xl mx-auto mb-4 p-4 rounded-lg bg-gray-100 markdown-body relative';
+                chatArea.appendChild(tempMessageDiv);
+                welcomeMessage.style.display = 'none';
             }
+            scheduleRender();
         } catch (e) {
             console.error('Error parsing event data:', e);
         }
     };
 
+    currentEventSource.addEventListener('done', function() {
+        currentEventSource.close();
+        if (!tempMessageDiv) return;
+
+        // 流式传输完成后进行最终渲染
+        const finalContent = accumulatedContent;
+        finished = true;
+        tempMessageDiv.innerHTML = DOMPurify.sanitize(marked.parse(finalContent));
+
+        // 添加复制按钮
+        const copyBtn = document.createElement('button');
+        copyBtn.className = 'absolute top-2 right-2 p-1 bg-gray-200 rounded-md text-xs';
+        copyBtn.textContent = '复制';
+        copyBtn.onclick = () => {
+            navigator.clipboard.writeText(finalContent).then(() => {
+                copyBtn.textContent = '已复制';
+                setTimeout(() => copyBtn.textContent = '复制', 2000);
+            });
+        };
+        tempMessageDiv.appendChild(copyBtn);
+
+        // 保存到本地存储
+        if (currentChatId) {
+            // 正确的数据结构应该是对象包含messages数组
+            const chatData = JSON.parse(localStorage.getItem(`chat_${currentChatId}`) || '{"name": "新聊天", "messages": []}');
+            chatData.messages.push({ content: finalContent, isAssistant: true });
+            localStorage.setItem(`chat_${currentChatId}`, JSON.stringify(chatData));
+        }
+    });
+
     currentEventSource.onerror = function(error) {
         console.error('EventSource error:', error);
         currentEventSource.close();
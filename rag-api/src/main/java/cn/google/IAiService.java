@@ -1,6 +1,10 @@
 package cn.google;
 
+import cn.google.request.BatchRagRequest;
+import cn.google.request.RagFilter;
+import cn.google.response.BatchRagResult;
 import org.springframework.ai.chat.ChatResponse;
+import org.springframework.http.codec.ServerSentEvent;
 import reactor.core.publisher.Flux;
 
 /**
@@ -34,8 +38,65 @@ public interface IAiService {
      * @param model AI模型名称
      * @param ragTag 知识库标签，用于检索相关文档
      * @param message 用户输入的消息
+     * @param filter 附加的元数据过滤条件，可为 null
      * @return 基于知识库的流式AI回复
      */
-    Flux<ChatResponse> generateStreamRag(String model, String ragTag, String message);
+    Flux<ChatResponse> generateStreamRag(String model, String ragTag, String message, RagFilter filter);
+
+    /**
+     * 生成AI回复（流式方式，紧凑增量格式）
+     * 只输出新增文本，并按刷新间隔或字节阈值合并多个 token 后写出一个事件
+     * 
+     * @param model AI模型名称
+     * @param message 用户输入的消息
+     * @return 增量事件流
+     */
+    Flux<ServerSentEvent<String>> generateStreamDelta(String model, String message);
+
+    /**
+     * 基于RAG的流式AI回复（紧凑增量格式）
+     * 
+     * @param model AI模型名称
+     * @param ragTag 知识库标签，用于检索相关文档
+     * @param message 用户输入的消息
+     * @param filter 附加的元数据过滤条件，可为 null
+     * @return 增量事件流
+     */
+    Flux<ServerSentEvent<String>> generateStreamRagDelta(String model, String ragTag, String message, RagFilter filter);
+
+    /**
+     * 会话式RAG流式对话
+     * 同一会话ID的多轮对话复用首轮检索到的上下文与历史对话，提示词按固定前缀顺序排列，便于模型复用缓存
+     * 
+     * @param model AI模型名称
+     * @param ragTag 知识库标签，用于检索相关文档
+     * @param conversationId 会话ID，由客户端生成并在多轮对话中保持不变
+     * @param message 用户输入的消息
+     * @param filter 附加的元数据过滤条件，可为 null
+     * @return 基于知识库的流式AI回复
+     */
+    Flux<ChatResponse> chatStreamRag(String model, String ragTag, String conversationId, String message, RagFilter filter);
+
+    /**
+     * 会话式RAG流式对话（紧凑增量格式）
+     * 
+     * @param model AI模型名称
+     * @param ragTag 知识库标签，用于检索相关文档
+     * @param conversationId 会话ID，由客户端生成并在多轮对话中保持不变
+     * @param message 用户输入的消息
+     * @param filter 附加的元数据过滤条件，可为 null
+     * @return 增量事件流
+     */
+    Flux<ServerSentEvent<String>> chatStreamRagDelta(String model, String ragTag, String conversationId, String message, RagFilter filter);
+
+    /**
+     * 批量知识库问答
+     * 一次提交多个（知识库标签, 问题），问题分批向量化与检索，生成受并发上限控制，结果按完成顺序逐条返回（NDJSON）
+     * 
+     * @param model AI模型名称
+     * @param request 问题列表
+     * @return 逐条完成的问答结果，每条带有分阶段耗时；请求不合法时抛出 IllegalArgumentException，由控制器转换为 code 0001 的响应
+     */
+    Flux<BatchRagResult> batchRag(String model, BatchRagRequest request);
 
 }
@@ -1,7 +1,12 @@
 package cn.google;
 
+import cn.google.response.EmbeddingMigrationStatus;
+import cn.google.response.IngestJobStatus;
+import cn.google.response.RagTagStats;
 import cn.google.response.Response;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.util.List;
@@ -20,15 +25,31 @@ public interface IRAGService {
      */
     Response<List<String>> queryRagTagList();
 
+    /**
+     * 查询指定知识库的统计信息
+     * 
+     * @param ragTag 知识库标签
+     * @return 包含文档数、片段数、字节数及最后更新时间的响应
+     */
+    Response<RagTagStats> queryRagTagStats(String ragTag);
+
     /**
      * 上传文件到指定知识库
      * 
      * @param ragTag 知识库标签，用于标识和管理文档
      * @param files 要上传的文件列表
-     * @return 上传操作的结果响应
+     * @return 上传操作的结果响应，data 为入库任务ID
      */
     Response<String> uploadFile(String ragTag, List<MultipartFile> files);
 
+    /**
+     * 查询入库任务进度
+     * 
+     * @param jobId 入库任务ID
+     * @return 任务进度响应
+     */
+    Response<IngestJobStatus> queryIngestJob(String jobId);
+
     /**
      * 分析Git仓库并提取知识
      * 克隆指定的Git仓库，解析其中的文档文件，并将内容存储到向量数据库中
@@ -36,9 +57,64 @@ public interface IRAGService {
      * @param repoUrl Git仓库URL
      * @param userName Git用户名
      * @param token Git访问令牌
-     * @return 分析操作的结果响应
+     * @return 分析操作的结果响应，data 为入库任务ID
      * @throws Exception 当克隆或解析过程中出现错误时抛出
      */
     Response<String> analyzeGitRepository(String repoUrl, String userName, String token) throws Exception;
 
+    /**
+     * 修复向量表中的重复片段
+     * 删除内容完全相同的重复行，并将历史随机ID改写为内容哈希ID
+     * 
+     * @param ragTag 知识库标签，为空时处理全部知识库
+     * @return 修复结果响应
+     */
+    Response<String> repairVectorStore(String ragTag);
+
+    /**
+     * 导出知识库快照
+     * 将片段、元数据与向量写成二进制快照文件（列式 float32 向量、压缩文本、分块校验）
+     * 
+     * @param ragTag 知识库标签
+     * @return 快照文件下载流
+     */
+    ResponseEntity<StreamingResponseBody> exportSnapshot(String ragTag);
+
+    /**
+     * 导入知识库快照
+     * 直接批量写入向量数据库或内存向量存储，不调用嵌入模型
+     * 
+     * @param ragTag 导入后的知识库标签，为空时沿用快照中的标签
+     * @param target 导入目标：pg（默认）或 memory
+     * @param file 快照文件
+     * @return 导入结果响应
+     */
+    Response<String> importSnapshot(String ragTag, String target, MultipartFile file);
+
+    /**
+     * 启动嵌入模型迁移
+     * 后台将知识库重新向量化到影子表，每个知识库完成后单独切换检索，迁移期间检索与入库不中断
+     * 
+     * @param targetModel 目标嵌入模型
+     * @param ragTag 知识库标签，为空时迁移全部知识库
+     * @return 迁移任务ID
+     */
+    Response<String> startEmbeddingMigration(String targetModel, String ragTag);
+
+    /**
+     * 查询嵌入模型迁移进度
+     * 
+     * @param jobId 迁移任务ID
+     * @return 迁移进度
+     */
+    Response<EmbeddingMigrationStatus> queryEmbeddingMigration(String jobId);
+
+    /**
+     * 完成嵌入模型迁移
+     * 全部知识库切换后，影子表改名为主向量表，旧表保留为 vector_store_retired
+     * 
+     * @return 执行结果响应
+     */
+    Response<String> finalizeEmbeddingMigration();
+
 }
@@ -0,0 +1,51 @@
+package cn.google.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 批量知识库问答请求
+ * 用于离线评测、FAQ 预生成等一次提交大量问题的场景
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchRagRequest implements Serializable {
+
+    /** 问题列表 */
+    private List<Item> items;
+
+    /** 每个问题检索的文档数，为空时使用默认值 5 */
+    private Integer topK;
+
+    /** 附加的元数据过滤条件，对所有问题生效，可为空 */
+    private RagFilter filter;
+
+    /**
+     * 单个问题
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item implements Serializable {
+
+        /** 调用方指定的问题ID，原样返回，用于对应结果；为空时使用问题在列表中的序号 */
+        private String id;
+
+        /** 知识库标签 */
+        private String ragTag;
+
+        /** 问题 */
+        private String question;
+
+    }
+
+}
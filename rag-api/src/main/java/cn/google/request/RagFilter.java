@@ -0,0 +1,37 @@
+package cn.google.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 检索时的片段元数据过滤条件，均为可选，多个条件之间为 AND
+ * 流式接口以同名查询参数传入（如 fileTypes=java,md&ingestedAfter=1700000000000），批量问答放在请求体中
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RagFilter implements Serializable {
+
+    /** 来源路径（上传文件名或仓库内相对路径），精确匹配 */
+    private String source;
+
+    /** 文件类型（扩展名，小写），匹配任一 */
+    private List<String> fileTypes;
+
+    /** Git 仓库提交ID */
+    private String repoCommit;
+
+    /** 入库时间下限（毫秒时间戳，含） */
+    private Long ingestedAfter;
+
+    /** 入库时间上限（毫秒时间戳，含） */
+    private Long ingestedBefore;
+
+}
@@ -0,0 +1,64 @@
+package cn.google.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 批量知识库问答的单条结果
+ * 按完成顺序逐行返回（NDJSON），通过 id 与请求中的问题对应
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchRagResult implements Serializable {
+
+    /** 问题ID */
+    private String id;
+
+    /** 知识库标签 */
+    private String ragTag;
+
+    /** 问题 */
+    private String question;
+
+    /** 回答，失败时为空 */
+    private String answer;
+
+    /** 失败原因，成功时为空 */
+    private String error;
+
+    /** 检索到的文档数 */
+    private int documents;
+
+    /** 检索到的文档来源（去重，按相似度顺序） */
+    private List<String> sources;
+
+    /** 输出 token 数 */
+    private long tokens;
+
+    /** 所在批次的查询向量化耗时（毫秒，整批共享） */
+    private long embedMs;
+
+    /** 所在批次的多查询检索耗时（毫秒，整批共享） */
+    private long retrievalMs;
+
+    /** 检索完成后等待生成并发名额的时间（毫秒） */
+    private long queueMs;
+
+    /** 首 token 延迟（毫秒） */
+    private long ttftMs;
+
+    /** 生成耗时（毫秒） */
+    private long generationMs;
+
+    /** 自批量请求开始到本条完成的耗时（毫秒） */
+    private long elapsedMs;
+
+}
@@ -0,0 +1,58 @@
+package cn.google.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 嵌入模型迁移任务进度
+ * 已有片段按新模型重新向量化写入影子表，每个知识库完成后单独切换检索
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingMigrationStatus implements Serializable {
+
+    /** 任务ID */
+    private String jobId;
+
+    /** 目标嵌入模型 */
+    private String targetModel;
+
+    /** 目标模型的向量维度 */
+    private int dimensions;
+
+    /** 任务状态：running / completed / failed */
+    private String state;
+
+    /** 正在迁移的知识库标签 */
+    private String currentRagTag;
+
+    /** 待迁移的片段总数 */
+    private long total;
+
+    /** 已重新向量化的片段数 */
+    private long migrated;
+
+    /** 平均吞吐（片段/秒） */
+    private double rowsPerSecond;
+
+    /** 已切换到新模型的知识库标签 */
+    private List<String> switchedRagTags;
+
+    /** 开始时间（毫秒时间戳） */
+    private long startedAt;
+
+    /** 结束时间（毫秒时间戳），未结束为 0 */
+    private long finishedAt;
+
+    /** 失败原因 */
+    private String error;
+
+}
@@ -0,0 +1,42 @@
+package cn.google.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 入库任务进度
+ * 一次上传或一次Git仓库分析对应一个任务，任务内每个文件为一个子任务
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestJobStatus implements Serializable {
+
+    /** 任务ID */
+    private String jobId;
+
+    /** 知识库标签 */
+    private String ragTag;
+
+    /** 文件总数 */
+    private long total;
+
+    /** 已成功处理的文件数 */
+    private long completed;
+
+    /** 处理失败（重试耗尽）的文件数 */
+    private long failed;
+
+    /** 累计写入的文档片段数 */
+    private long chunks;
+
+    /** 是否全部完成（成功 + 失败 = 总数） */
+    private boolean done;
+
+}
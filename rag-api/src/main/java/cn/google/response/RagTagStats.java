@@ -0,0 +1,36 @@
+package cn.google.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 知识库标签统计信息
+ * 记录某个知识库累计入库的文档数、片段数、字节数及最后更新时间
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RagTagStats implements Serializable {
+
+    /** 知识库标签 */
+    private String ragTag;
+
+    /** 累计入库文档数 */
+    private long documentCount;
+
+    /** 累计入库片段数 */
+    private long chunkCount;
+
+    /** 累计入库字节数 */
+    private long bytes;
+
+    /** 最后更新时间（毫秒时间戳） */
+    private long lastUpdated;
+
+}
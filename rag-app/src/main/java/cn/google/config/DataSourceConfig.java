@@ -0,0 +1,103 @@
+package cn.google.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+
+/**
+ * 数据源配置类
+ *
+ * 读写分离为两个独立的 Hikari 连接池：
+ * 1. 写库（spring.datasource）：文档入库、片段去重、快照导入导出、建表建索引
+ * 2. 读库（rag.datasource.read）：对话检索的相似度查询，配置了 url 时指向 pgvector 只读副本，否则连接主库
+ *
+ * 大批量 Git 仓库入库只占用写库连接，不会使对话检索等待连接；
+ * 两个连接池通过 connection-init-sql 分别设置会话参数（如读库的 hnsw.ef_search、work_mem）。
+ *
+ */
+@Configuration
+public class DataSourceConfig {
+
+    /**
+     * 写库连接属性
+     *
+     * @return DataSourceProperties实例
+     */
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource")
+    public DataSourceProperties writeDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    /**
+     * 写库连接池
+     *
+     * @param properties 写库连接属性
+     * @return HikariDataSource实例
+     */
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource writeDataSource(@Qualifier("writeDataSourceProperties") DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * 读库连接属性
+     *
+     * @return DataSourceProperties实例
+     */
+    @Bean
+    @ConfigurationProperties("rag.datasource.read")
+    public DataSourceProperties readDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    /**
+     * 读库连接池，未配置 url 时使用写库的连接信息（同一数据库、独立连接池）
+     *
+     * @param readProperties 读库连接属性
+     * @param writeProperties 写库连接属性
+     * @return HikariDataSource实例
+     */
+    @Bean
+    @ConfigurationProperties("rag.datasource.read.hikari")
+    public HikariDataSource readDataSource(@Qualifier("readDataSourceProperties") DataSourceProperties readProperties,
+                                           @Qualifier("writeDataSourceProperties") DataSourceProperties writeProperties) {
+        DataSourceProperties properties = StringUtils.hasText(readProperties.getUrl()) ? readProperties : writeProperties;
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * 写库JDBC模板
+     *
+     * @param dataSource 写库连接池
+     * @return JdbcTemplate实例
+     */
+    @Bean
+    @Primary
+    public JdbcTemplate jdbcTemplate(@Qualifier("writeDataSource") DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * 读库JDBC模板
+     *
+     * @param dataSource 读库连接池
+     * @return JdbcTemplate实例
+     */
+    @Bean
+    public JdbcTemplate readJdbcTemplate(@Qualifier("readDataSource") DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+}
@@ -0,0 +1,51 @@
+package cn.google.config;
+
+import cn.google.rag.DocumentReaderRegistry;
+import cn.google.rag.ParseCache;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * 文档解析配置类
+ * 
+ * 配置按格式选择解析方式的文档读取器，以及 Tika 解析结果缓存。
+ *
+ */
+@Configuration
+public class DocumentReaderConfig {
+
+    /**
+     * 配置解析结果缓存
+     * 
+     * @param redissonClient Redisson客户端
+     * @param redisEnabled 是否使用Redis缓存，关闭时只使用本地缓存
+     * @param localMaxMb 本地缓存上限（MB）
+     * @param entryMaxMb 单个文件解析结果上限（MB），超过不缓存
+     * @param ttlHours Redis缓存保留时间（小时）
+     * @return ParseCache实例
+     */
+    @Bean
+    public ParseCache parseCache(RedissonClient redissonClient,
+                                 @Value("${rag.parse-cache.redis-enabled:true}") boolean redisEnabled,
+                                 @Value("${rag.parse-cache.local-max-mb:64}") long localMaxMb,
+                                 @Value("${rag.parse-cache.entry-max-mb:8}") long entryMaxMb,
+                                 @Value("${rag.parse-cache.ttl-hours:168}") long ttlHours) {
+        return new ParseCache(redisEnabled ? redissonClient : null, localMaxMb << 20, entryMaxMb << 20, Duration.ofHours(ttlHours));
+    }
+
+    /**
+     * 配置文档读取器
+     * 
+     * @param parseCache 解析结果缓存
+     * @return DocumentReaderRegistry实例
+     */
+    @Bean
+    public DocumentReaderRegistry documentReaderRegistry(ParseCache parseCache) {
+        return new DocumentReaderRegistry(parseCache);
+    }
+
+}
@@ -1,19 +1,30 @@
 package cn.google.config;
 
+import cn.google.metrics.MeteredEmbeddingClient;
+import cn.google.rag.EmbeddingClients;
+import cn.google.rag.EmbeddingRoutes;
+import cn.google.rag.ParallelEmbeddingClient;
+import cn.google.rag.PreloadableSimpleVectorStore;
+import cn.google.rag.ReadOnlyPgVectorStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.MetadataMode;
 import org.springframework.ai.ollama.OllamaChatClient;
 import org.springframework.ai.ollama.OllamaEmbeddingClient;
 import org.springframework.ai.ollama.api.OllamaApi;
 import org.springframework.ai.ollama.api.OllamaOptions;
 import org.springframework.ai.openai.OpenAiEmbeddingClient;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.vectorstore.PgVectorStore;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.util.List;
+
 /**
  * AI模型配置类
  * 
@@ -21,12 +32,23 @@ import org.springframework.jdbc.core.JdbcTemplate;
  * 1. Ollama本地模型客户端
  * 2. OpenAI远程模型客户端
  * 3. 文本分割器
- * 4. 向量存储（简单存储和PostgreSQL向量存储）
+ * 4. 向量存储（简单存储和PostgreSQL向量存储，后者分为写入实例与只读检索实例）
+ * 5. 嵌入客户端（当前模型，以及切换嵌入模型时按名称获取的其他模型）
  *
  */
 @Configuration
 public class OllamaConfig {
 
+    /** 由 Ollama 提供的嵌入模型 */
+    @Value("${rag.embedding.ollama-models:nomic-embed-text}")
+    private List<String> ollamaEmbeddingModels;
+    /** 由 OpenAI 提供的嵌入模型 */
+    @Value("${rag.embedding.openai-models:text-embedding-ada-002,text-embedding-3-small,text-embedding-3-large}")
+    private List<String> openAiEmbeddingModels;
+    /** 批量向量化时并发发往 Ollama 的请求数 */
+    @Value("${rag.embedding.ollama-parallelism:4}")
+    private int ollamaEmbeddingParallelism;
+
     /**
      * 配置Ollama API客户端
      * 
@@ -74,25 +96,17 @@ public class OllamaConfig {
 
     /**
      * 配置简单向量存储
-     * 根据配置的嵌入模型选择使用Ollama或OpenAI的嵌入客户端
+     * 根据配置的嵌入模型选择使用Ollama或OpenAI的嵌入客户端，支持从知识库快照直接装载向量
      * 
      * @param model 嵌入模型名称
      * @param ollamaApi Ollama API实例
      * @param openAiApi OpenAI API实例
-     * @return SimpleVectorStore实例
+     * @param meterRegistry 指标注册中心
+     * @return PreloadableSimpleVectorStore实例
      */
     @Bean
-    public SimpleVectorStore vectorStore(@Value("${spring.ai.rag.embed}") String model, OllamaApi ollamaApi, OpenAiApi openAiApi) {
-        if ("nomic-embed-text".equalsIgnoreCase(model)) {
-            // 使用Ollama的nomic-embed-text模型进行文本嵌入
-            OllamaEmbeddingClient embeddingClient = new OllamaEmbeddingClient(ollamaApi);
-            embeddingClient.withDefaultOptions(OllamaOptions.create().withModel("nomic-embed-text"));
-            return new SimpleVectorStore(embeddingClient);
-        } else {
-            // 使用OpenAI的嵌入模型
-            OpenAiEmbeddingClient embeddingClient = new OpenAiEmbeddingClient(openAiApi);
-            return new SimpleVectorStore(embeddingClient);
-        }
+    public PreloadableSimpleVectorStore vectorStore(@Value("${spring.ai.rag.embed}") String model, OllamaApi ollamaApi, OpenAiApi openAiApi, MeterRegistry meterRegistry) {
+        return new PreloadableSimpleVectorStore(embeddingClient(model, ollamaApi, openAiApi, meterRegistry));
     }
 
     /**
@@ -103,20 +117,93 @@ public class OllamaConfig {
      * @param ollamaApi Ollama API实例
      * @param openAiApi OpenAI API实例
      * @param jdbcTemplate JDBC模板
+     * @param meterRegistry 指标注册中心
      * @return PgVectorStore实例
      */
     @Bean
-    public PgVectorStore pgVectorStore(@Value("${spring.ai.rag.embed}") String model, OllamaApi ollamaApi, OpenAiApi openAiApi, JdbcTemplate jdbcTemplate) {
-        if ("nomic-embed-text".equalsIgnoreCase(model)) {
-            // 使用Ollama的nomic-embed-text模型
+    public PgVectorStore pgVectorStore(@Value("${spring.ai.rag.embed}") String model, OllamaApi ollamaApi, OpenAiApi openAiApi, JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        return new PgVectorStore(jdbcTemplate, embeddingClient(model, ollamaApi, openAiApi, meterRegistry));
+    }
+
+    /**
+     * 配置只读PostgreSQL向量存储
+     * 使用读库连接池执行相似度检索，与入库写入互不争用连接
+     * 
+     * @param model 嵌入模型名称
+     * @param ollamaApi Ollama API实例
+     * @param openAiApi OpenAI API实例
+     * @param readJdbcTemplate 读库JDBC模板
+     * @param meterRegistry 指标注册中心
+     * @param embeddingRoutes 知识库检索路由
+     * @param embeddingClients 按模型名称获取的嵌入客户端
+     * @param vectorStore 内存向量存储，从快照装载进内存的知识库在其中检索
+     * @return ReadOnlyPgVectorStore实例
+     */
+    @Bean
+    public ReadOnlyPgVectorStore readPgVectorStore(@Value("${spring.ai.rag.embed}") String model, OllamaApi ollamaApi, OpenAiApi openAiApi,
+                                                   @Qualifier("readJdbcTemplate") JdbcTemplate readJdbcTemplate, MeterRegistry meterRegistry,
+                                                   EmbeddingRoutes embeddingRoutes, EmbeddingClients embeddingClients,
+                                                   PreloadableSimpleVectorStore vectorStore) {
+        return new ReadOnlyPgVectorStore(readJdbcTemplate, embeddingClient(model, ollamaApi, openAiApi, meterRegistry), embeddingRoutes, embeddingClients, vectorStore);
+    }
+
+    /**
+     * 配置嵌入客户端
+     * 供需要直接向量化的组件使用（如批量问答一次向量化整批问题），与向量存储使用相同的嵌入模型
+     *
+     * @param model 嵌入模型名称
+     * @param ollamaApi Ollama API实例
+     * @param openAiApi OpenAI API实例
+     * @param meterRegistry 指标注册中心
+     * @return 带指标采集的嵌入客户端
+     */
+    @Bean
+    public MeteredEmbeddingClient ragEmbeddingClient(@Value("${spring.ai.rag.embed}") String model, OllamaApi ollamaApi, OpenAiApi openAiApi, MeterRegistry meterRegistry) {
+        return embeddingClient(model, ollamaApi, openAiApi, meterRegistry);
+    }
+
+    /**
+     * 配置按模型名称获取的嵌入客户端
+     * 切换嵌入模型期间同时使用新旧两个模型：迁移任务与已切换的知识库使用新模型
+     * 
+     * @param ollamaApi Ollama API实例
+     * @param openAiApi OpenAI API实例
+     * @param meterRegistry 指标注册中心
+     * @return EmbeddingClients实例
+     */
+    @Bean
+    public EmbeddingClients embeddingClients(OllamaApi ollamaApi, OpenAiApi openAiApi, MeterRegistry meterRegistry) {
+        return new EmbeddingClients(model -> embeddingClient(model, ollamaApi, openAiApi, meterRegistry));
+    }
+
+    /**
+     * 根据嵌入模型名称创建嵌入客户端，并包装指标采集
+     * 模型按 rag.embedding.ollama-models / rag.embedding.openai-models 确定提供方，未登记的模型直接拒绝
+     * 
+     * @param model 嵌入模型名称
+     * @param ollamaApi Ollama API实例
+     * @param openAiApi OpenAI API实例
+     * @param meterRegistry 指标注册中心
+     * @return 带指标采集的嵌入客户端
+     */
+    private MeteredEmbeddingClient embeddingClient(String model, OllamaApi ollamaApi, OpenAiApi openAiApi, MeterRegistry meterRegistry) {
+        if (contains(ollamaEmbeddingModels, model)) {
+            // 使用Ollama的嵌入模型，如 nomic-embed-text；Ollama 客户端逐条串行请求，批量向量化改为并发请求
             OllamaEmbeddingClient embeddingClient = new OllamaEmbeddingClient(ollamaApi);
-            embeddingClient.withDefaultOptions(OllamaOptions.create().withModel("nomic-embed-text"));
-            return new PgVectorStore(jdbcTemplate, embeddingClient);
-        } else {
-            // 使用OpenAI的嵌入模型
-            OpenAiEmbeddingClient embeddingClient = new OpenAiEmbeddingClient(openAiApi);
-            return new PgVectorStore(jdbcTemplate, embeddingClient);
+            embeddingClient.withDefaultOptions(OllamaOptions.create().withModel(model));
+            return new MeteredEmbeddingClient(new ParallelEmbeddingClient(embeddingClient, ollamaEmbeddingParallelism), model, meterRegistry);
+        }
+        if (contains(openAiEmbeddingModels, model)) {
+            // 使用OpenAI的嵌入模型，显式指定模型名称，不使用客户端的默认模型
+            OpenAiEmbeddingClient embeddingClient = new OpenAiEmbeddingClient(openAiApi, MetadataMode.EMBED,
+                    OpenAiEmbeddingOptions.builder().withModel(model).build());
+            return new MeteredEmbeddingClient(embeddingClient, model, meterRegistry);
         }
+        throw new IllegalArgumentException("未登记的嵌入模型 " + model + "，请在 rag.embedding.ollama-models 或 rag.embedding.openai-models 中配置");
+    }
+
+    private static boolean contains(List<String> models, String model) {
+        return model != null && models.stream().anyMatch(m -> m.trim().equalsIgnoreCase(model));
     }
 
 }
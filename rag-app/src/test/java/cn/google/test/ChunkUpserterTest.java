@@ -0,0 +1,28 @@
+package cn.google.test;
+
+import cn.google.rag.ChunkUpserter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.UUID;
+
+public class ChunkUpserterTest {
+
+    @Test
+    public void test_chunkId_deterministic() {
+        String id1 = ChunkUpserter.chunkId("知识库名称", "docs/readme.md", "王大瓜，1990年出生");
+        String id2 = ChunkUpserter.chunkId("知识库名称", "docs/readme.md", "王大瓜，1990年出生");
+        Assert.assertEquals(id1, id2);
+        // PgVectorStore 的 id 列为 uuid 类型
+        Assert.assertEquals(id1, UUID.fromString(id1).toString());
+    }
+
+    @Test
+    public void test_chunkId_scoped_by_tag_and_source() {
+        String base = ChunkUpserter.chunkId("tag-a", "a.md", "content");
+        Assert.assertNotEquals(base, ChunkUpserter.chunkId("tag-b", "a.md", "content"));
+        Assert.assertNotEquals(base, ChunkUpserter.chunkId("tag-a", "b.md", "content"));
+        Assert.assertNotEquals(base, ChunkUpserter.chunkId("tag-a", "a.md", "content2"));
+    }
+
+}
@@ -0,0 +1,43 @@
+package cn.google.test;
+
+import cn.google.rag.DocumentReaderRegistry;
+import cn.google.rag.ParseCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+public class DocumentReaderRegistryTest {
+
+    private final DocumentReaderRegistry registry = new DocumentReaderRegistry(new ParseCache(null, 1 << 20, 1 << 20, Duration.ofHours(1)));
+
+    @Test
+    public void test_textFastPath() {
+        byte[] content = "\uFEFF# 标题\n王大瓜，1990年出生。".getBytes(StandardCharsets.UTF_8);
+        DocumentReaderRegistry.Parsed parsed = registry.read("docs/README.md", content);
+        Assert.assertEquals(DocumentReaderRegistry.READER_TEXT, parsed.reader());
+        Assert.assertEquals("# 标题\n王大瓜，1990年出生。", parsed.documents().get(0).getContent());
+        Assert.assertEquals("docs/README.md", parsed.documents().get(0).getMetadata().get("source"));
+
+        Assert.assertTrue(DocumentReaderRegistry.isTextFile("src/Dockerfile"));
+        Assert.assertFalse(DocumentReaderRegistry.isTextFile("report.pdf"));
+    }
+
+    @Test
+    public void test_fallbackAndCache() {
+        // GBK 编码不是合法 UTF-8，回退到 Tika
+        byte[] content = "知识库检索增强生成".getBytes(Charset.forName("GBK"));
+        Assert.assertEquals(DocumentReaderRegistry.READER_TIKA, registry.read("notes.txt", content).reader());
+
+        byte[] html = "<html><body><p>知识库</p></body></html>".getBytes(StandardCharsets.UTF_8);
+        DocumentReaderRegistry.Parsed first = registry.read("page.html", html);
+        DocumentReaderRegistry.Parsed second = registry.read("copy.html", html);
+        Assert.assertEquals(DocumentReaderRegistry.READER_TIKA, first.reader());
+        Assert.assertEquals(DocumentReaderRegistry.READER_CACHE, second.reader());
+        Assert.assertEquals(first.documents().get(0).getContent(), second.documents().get(0).getContent());
+        Assert.assertEquals("copy.html", second.documents().get(0).getMetadata().get("source"));
+    }
+
+}
@@ -0,0 +1,56 @@
+package cn.google.test;
+
+import cn.google.rag.KnowledgeSnapshotCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class KnowledgeSnapshotCodecTest {
+
+    @Test
+    public void test_roundTrip() throws IOException {
+        int rows = KnowledgeSnapshotCodec.BLOCK_ROWS + 10;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (KnowledgeSnapshotCodec.Writer writer = new KnowledgeSnapshotCodec.Writer(out, "知识库名称", 4)) {
+            for (int i = 0; i < rows; i++) {
+                writer.write(new KnowledgeSnapshotCodec.Row(new UUID(0, i), "片段" + i, "{\"knowledge\":\"知识库名称\"}", new float[]{i, -i, 0.5f, 1e-3f}));
+            }
+        }
+
+        KnowledgeSnapshotCodec.Reader reader = new KnowledgeSnapshotCodec.Reader(new ByteArrayInputStream(out.toByteArray()));
+        Assert.assertEquals("知识库名称", reader.header().ragTag());
+        Assert.assertEquals(4, reader.header().dimensions());
+
+        List<KnowledgeSnapshotCodec.Row> all = new ArrayList<>();
+        List<KnowledgeSnapshotCodec.Row> block;
+        while ((block = reader.nextBlock()) != null) {
+            all.addAll(block);
+        }
+        Assert.assertEquals(rows, all.size());
+        KnowledgeSnapshotCodec.Row last = all.get(rows - 1);
+        Assert.assertEquals(new UUID(0, rows - 1), last.id());
+        Assert.assertEquals("片段" + (rows - 1), last.content());
+        Assert.assertArrayEquals(new float[]{rows - 1, -(rows - 1), 0.5f, 1e-3f}, last.embedding(), 0f);
+    }
+
+    @Test(expected = IOException.class)
+    public void test_corruptedBlock() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (KnowledgeSnapshotCodec.Writer writer = new KnowledgeSnapshotCodec.Writer(out, "tag", 2)) {
+            writer.write(new KnowledgeSnapshotCodec.Row(UUID.randomUUID(), "content", "{}", new float[]{1f, 2f}));
+        }
+        byte[] bytes = out.toByteArray();
+        // 头部之后第一个向量值所在位置
+        bytes[8 + 4 + 4 + 3 + 4 + 8 + 4 + 16] ^= 0x01;
+
+        KnowledgeSnapshotCodec.Reader reader = new KnowledgeSnapshotCodec.Reader(new ByteArrayInputStream(bytes));
+        reader.nextBlock();
+    }
+
+}
@@ -0,0 +1,63 @@
+package cn.google.test;
+
+import cn.google.rag.ChunkUpserter;
+import cn.google.rag.MetadataBitmapIndex;
+import cn.google.rag.MetadataFilter;
+import cn.google.request.RagFilter;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.PgVectorFilterExpressionConverter;
+
+import java.util.List;
+import java.util.Map;
+
+public class MetadataFilterTest {
+
+    @Test
+    public void test_bitmapIndex() {
+        MetadataBitmapIndex index = new MetadataBitmapIndex();
+        index.put(new Document("1", "a", Map.of("knowledge", "知识库名称", "file_type", "java", "ingested_at", 100L)));
+        index.put(new Document("2", "b", Map.of("knowledge", "知识库名称", "file_type", "md", "ingested_at", 200)));
+        index.put(new Document("3", "c", Map.of("knowledge", "other", "file_type", "java", "ingested_at", 300L)));
+
+        MetadataFilter filter = MetadataFilter.knowledge("知识库名称");
+        Assert.assertEquals(2, index.select(filter.expression()).size());
+        Assert.assertEquals("1", index.select(filter.eq(ChunkUpserter.METADATA_FILE_TYPE, "java").expression()).get(0).getId());
+        Assert.assertEquals("2", index.select(filter.gte(ChunkUpserter.METADATA_INGESTED_AT, 150).expression()).get(0).getId());
+        Assert.assertEquals(1, index.select(MetadataFilter.knowledge("other").in(ChunkUpserter.METADATA_FILE_TYPE, List.of("java", "md"))
+                .expression()).size());
+
+        index.remove("1");
+        Assert.assertTrue(index.select(filter.eq(ChunkUpserter.METADATA_FILE_TYPE, "java").expression()).isEmpty());
+    }
+
+    @Test
+    public void test_ragFilter() {
+        MetadataBitmapIndex index = new MetadataBitmapIndex();
+        index.put(new Document("1", "a", Map.of("knowledge", "知识库名称", "file_type", "java", "ingested_at", 100L)));
+        index.put(new Document("2", "b", Map.of("knowledge", "知识库名称", "file_type", "md", "ingested_at", 200L)));
+
+        MetadataFilter filter = MetadataFilter.knowledge("知识库名称")
+                .and(RagFilter.builder().fileTypes(List.of("JAVA", " ", "md")).ingestedBefore(150L).build());
+        Assert.assertEquals("知识库名称", filter.knowledgeTag());
+        Assert.assertEquals(3, filter.conditions().size());
+        Assert.assertEquals("1", index.select(filter.expression()).get(0).getId());
+        Assert.assertEquals(1, index.select(filter.expression()).size());
+
+        // 各项为空时不追加条件
+        Assert.assertTrue(MetadataFilter.none().and(new RagFilter()).isEmpty());
+        Assert.assertSame(filter, filter.and(null));
+        Assert.assertTrue(MetadataFilter.none().and(RagFilter.builder().source("a.md").build()).pgVectorJsonPath().contains("a.md"));
+    }
+
+    @Test
+    public void test_pgVectorEscape() {
+        // 与字符串拼接不同，引号不会提前结束 SQL 字面量
+        MetadataFilter filter = MetadataFilter.knowledge("x' OR '1'='1");
+        Assert.assertSame(filter.pgVectorExpression(), MetadataFilter.knowledge("x' OR '1'='1").pgVectorExpression());
+        String jsonPath = new PgVectorFilterExpressionConverter().convertExpression(filter.pgVectorExpression());
+        Assert.assertTrue(jsonPath, jsonPath.contains("\"x'' OR ''1''=''1\""));
+    }
+
+}
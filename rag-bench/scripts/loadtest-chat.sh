@@ -0,0 +1,7 @@
+#!/usr/bin/env bash
+# RAG 流式对话压测：/api/v1/{provider}/generate_stream_rag
+# 前置：stub-models.sh 已启动，rag-app 以 loadtest 配置启动（--spring.profiles.active=loadtest），
+#      且已通过 loadtest-upload.sh 向 ragTag=loadtest 写入过数据
+# 用法：./loadtest-chat.sh --concurrency=32 --duration-s=60 --provider=ollama
+cd "$(dirname "$0")/.." || exit 1
+exec java -cp target/benchmarks.jar cn.google.bench.load.LoadScenario --scenario=chat "$@"
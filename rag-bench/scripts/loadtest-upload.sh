@@ -0,0 +1,5 @@
+#!/usr/bin/env bash
+# 文件上传入库压测：/api/v1/rag/file/upload
+# 用法：./loadtest-upload.sh --concurrency=8 --duration-s=60 --file-words=2000
+cd "$(dirname "$0")/.." || exit 1
+exec java -cp target/benchmarks.jar cn.google.bench.load.LoadScenario --scenario=upload "$@"
@@ -0,0 +1,5 @@
+#!/usr/bin/env bash
+# 启动离线桩模型服务（同时模拟 Ollama 与 OpenAI 接口）
+# 用法：./stub-models.sh --port=18080 --ttft-ms=300 --tps=40 --tokens=120 --failure-rate=0.01 --drop-rate=0
+cd "$(dirname "$0")/.." || exit 1
+exec java -cp target/benchmarks.jar cn.google.bench.stub.StubModelServer "$@"
@@ -0,0 +1,29 @@
+package cn.google.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 简单的 --key=value 命令行参数解析，供桩服务与压测工具共用
+ *
+ */
+public final class CliArgs {
+
+    private CliArgs() {
+    }
+
+    public static Map<String, String> parse(String[] args) {
+        Map<String, String> map = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                map.put(arg.substring(2), "true");
+            } else {
+                map.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return map;
+    }
+
+}
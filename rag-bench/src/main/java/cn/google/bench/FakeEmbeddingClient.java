@@ -0,0 +1,97 @@
+package cn.google.bench;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 确定性的离线嵌入客户端
+ * <p>
+ * 采用特征哈希（feature hashing）把文本中的词映射到固定维度并做 L2 归一化，
+ * 相同文本永远得到相同向量，词重叠越多余弦相似度越高。
+ * 不依赖 Ollama / OpenAI，供基准测试与离线压测使用。
+ *
+ */
+public class FakeEmbeddingClient implements EmbeddingClient {
+
+    /** 与 nomic-embed-text 相同的维度 */
+    public static final int DEFAULT_DIMENSIONS = 768;
+
+    private final int dimensions;
+
+    public FakeEmbeddingClient() {
+        this(DEFAULT_DIMENSIONS);
+    }
+
+    public FakeEmbeddingClient(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<Embedding> embeddings = new ArrayList<>(request.getInstructions().size());
+        int index = 0;
+        for (String text : request.getInstructions()) {
+            embeddings.add(new Embedding(embed(text), index++));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public List<Double> embed(String text) {
+        double[] vector = new double[dimensions];
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean boundary = i == length || !Character.isLetterOrDigit(text.charAt(i));
+            if (!boundary && start < 0) {
+                start = i;
+            } else if (boundary && start >= 0) {
+                int hash = fnv1a(text, start, i);
+                int bucket = Math.floorMod(hash, dimensions);
+                vector[bucket] += (hash & 0x80000000) == 0 ? 1d : -1d;
+                start = -1;
+            }
+        }
+
+        double norm = 0d;
+        for (double v : vector) norm += v * v;
+        norm = norm == 0d ? 1d : Math.sqrt(norm);
+
+        List<Double> result = new ArrayList<>(dimensions);
+        for (double v : vector) result.add(v / norm);
+        return result;
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        return embed(document.getContent());
+    }
+
+    @Override
+    public List<List<Double>> embed(List<String> texts) {
+        List<List<Double>> result = new ArrayList<>(texts.size());
+        for (String text : texts) result.add(embed(text));
+        return result;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    private static int fnv1a(String text, int from, int to) {
+        int hash = 0x811c9dc5;
+        for (int i = from; i < to; i++) {
+            hash ^= Character.toLowerCase(text.charAt(i));
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+}
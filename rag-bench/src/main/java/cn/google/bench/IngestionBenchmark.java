@@ -0,0 +1,52 @@
+package cn.google.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.core.io.Resource;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端入库基准：解析 → 分割 → 打标签 → 向量化写入
+ * <p>
+ * 与 RAGController#uploadFile 的处理步骤一致，向量存储替换为 SimpleVectorStore + FakeEmbeddingClient，
+ * 结果反映的是应用自身（Tika 解析、分割、对象分配）的开销。
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestionBenchmark {
+
+    @Param({"2000", "20000"})
+    private int words;
+
+    private TokenTextSplitter tokenTextSplitter;
+    private Resource file;
+
+    @Setup
+    public void setup() {
+        tokenTextSplitter = new TokenTextSplitter();
+        file = SyntheticCorpus.file(3, words, "synthetic.txt");
+    }
+
+    @Benchmark
+    public int uploadFile() {
+        SimpleVectorStore simpleVectorStore = new SimpleVectorStore(new FakeEmbeddingClient());
+
+        List<Document> documents = new TikaDocumentReader(file).get();
+        List<Document> documentSplitterList = tokenTextSplitter.apply(documents);
+        documentSplitterList.forEach(doc -> doc.getMetadata().put("knowledge", "bench"));
+        simpleVectorStore.accept(documentSplitterList);
+
+        return documentSplitterList.size();
+    }
+
+}
@@ -0,0 +1,41 @@
+package cn.google.bench;
+
+import cn.google.rag.RagPromptAssembler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提示词组装基准：系统指令 + 检索结果上下文 + 用户问题的组装耗时
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptAssemblyBenchmark {
+
+    @Param({"5", "20"})
+    private int topK;
+
+    @Param({"200", "800"})
+    private int wordsPerChunk;
+
+    private List<Document> documents;
+
+    @Setup
+    public void setup() {
+        documents = SyntheticCorpus.documents(7, topK, wordsPerChunk, "bench");
+    }
+
+    @Benchmark
+    public List<Message> assemble() {
+        return RagPromptAssembler.assemble("王大瓜，哪年出生", documents);
+    }
+
+}
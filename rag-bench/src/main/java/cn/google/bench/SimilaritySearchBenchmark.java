@@ -0,0 +1,64 @@
+package cn.google.bench;
+
+import cn.google.rag.MetadataFilter;
+import cn.google.rag.PreloadableSimpleVectorStore;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 相似度检索基准：SimpleVectorStore 全量扫描 top-5，以及按知识库过滤（语料分布在 20 个知识库中）时
+ * PreloadableSimpleVectorStore 经元数据位图索引只扫描命中文档的 top-5
+ * <p>
+ * 查询向量化使用 {@link FakeEmbeddingClient}，其耗时可忽略，结果主要反映扫描与排序开销。
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimilaritySearchBenchmark {
+
+    @Param({"1000", "10000"})
+    private int corpusSize;
+
+    private static final int RAG_TAGS = 20;
+
+    private SimpleVectorStore simpleVectorStore;
+    private PreloadableSimpleVectorStore indexedVectorStore;
+    private SearchRequest request;
+    private SearchRequest filteredRequest;
+
+    @Setup
+    public void setup() {
+        simpleVectorStore = new SimpleVectorStore(new FakeEmbeddingClient());
+        simpleVectorStore.add(SyntheticCorpus.documents(1, corpusSize, 120, "bench"));
+        request = SearchRequest.query(SyntheticCorpus.text(99, 16)).withTopK(5);
+
+        List<Document> documents = SyntheticCorpus.documents(1, corpusSize, 120, "bench");
+        for (int i = 0; i < documents.size(); i++) {
+            documents.get(i).getMetadata().put("knowledge", "bench-" + (i % RAG_TAGS));
+        }
+        indexedVectorStore = new PreloadableSimpleVectorStore(new FakeEmbeddingClient());
+        indexedVectorStore.add(documents);
+        filteredRequest = SearchRequest.query(SyntheticCorpus.text(99, 16)).withTopK(5)
+                .withFilterExpression(MetadataFilter.knowledge("bench-0").expression());
+    }
+
+    @Benchmark
+    public List<Document> simpleVectorStoreScan() {
+        return simpleVectorStore.similaritySearch(request);
+    }
+
+    @Benchmark
+    public List<Document> filteredBitmapScan() {
+        return indexedVectorStore.similaritySearch(filteredRequest);
+    }
+
+}
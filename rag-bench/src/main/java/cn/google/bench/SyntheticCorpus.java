@@ -0,0 +1,82 @@
+package cn.google.bench;
+
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 合成语料生成器
+ * <p>
+ * 基于固定种子的随机数从有限词表中生成文本，保证多次运行得到完全相同的语料，
+ * 便于不同版本之间的基准结果直接对比。
+ *
+ */
+public final class SyntheticCorpus {
+
+    private static final String[] VOCABULARY = {
+            "spring", "vector", "embedding", "redis", "postgres", "ollama", "openai", "index", "query",
+            "document", "chunk", "token", "model", "stream", "latency", "cache", "knowledge", "retrieval",
+            "prompt", "context", "answer", "question", "repository", "git", "upload", "file", "parser",
+            "splitter", "metadata", "filter", "similarity", "cosine", "distance", "hnsw", "ivfflat", "pool",
+            "connection", "thread", "batch", "request", "response", "service", "controller", "config",
+            "知识库", "向量", "检索", "文档", "模型", "回答", "问题", "分割", "缓存", "标签"
+    };
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * 生成一段指定词数的文本，每 12~20 个词一句
+     */
+    public static String text(long seed, int words) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(words * 8);
+        int sentence = 0;
+        int sentenceLength = 12 + random.nextInt(9);
+        for (int i = 0; i < words; i++) {
+            sb.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+            if (++sentence == sentenceLength) {
+                sb.append(". ");
+                sentence = 0;
+                sentenceLength = 12 + random.nextInt(9);
+            } else {
+                sb.append(' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 生成一组带知识库标签的文档
+     */
+    public static List<Document> documents(long seed, int count, int wordsPerDocument, String ragTag) {
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("knowledge", ragTag);
+            documents.add(new Document(text(seed + i, wordsPerDocument), metadata));
+        }
+        return documents;
+    }
+
+    /**
+     * 生成一个模拟上传文件的资源
+     */
+    public static Resource file(long seed, int words, String filename) {
+        byte[] content = text(seed, words).getBytes(StandardCharsets.UTF_8);
+        return new ByteArrayResource(content) {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+        };
+    }
+
+}
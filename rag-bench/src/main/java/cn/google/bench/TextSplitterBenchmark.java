@@ -0,0 +1,39 @@
+package cn.google.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文本分割基准：TokenTextSplitter 对不同长度文档的切分耗时
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextSplitterBenchmark {
+
+    @Param({"500", "5000", "50000"})
+    private int words;
+
+    private TokenTextSplitter splitter;
+    private List<Document> documents;
+
+    @Setup
+    public void setup() {
+        splitter = new TokenTextSplitter();
+        documents = SyntheticCorpus.documents(42, 1, words, "bench");
+    }
+
+    @Benchmark
+    public List<Document> split() {
+        return splitter.apply(documents);
+    }
+
+}
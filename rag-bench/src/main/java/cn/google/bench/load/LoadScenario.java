@@ -0,0 +1,213 @@
+package cn.google.bench.load;
+
+import cn.google.bench.CliArgs;
+import cn.google.bench.SyntheticCorpus;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 压测场景驱动
+ * <p>
+ * 以固定并发对 rag-app 发起请求，统计吞吐、首 token 延迟（TTFT）与总耗时分位数、错误率。
+ * 场景：
+ * <ul>
+ *     <li>chat：GET /api/v1/{provider}/generate_stream_rag，按 SSE 读取，首个 data 事件记为 TTFT；--format=delta 时使用紧凑增量格式</li>
+ *     <li>upload：POST /api/v1/rag/file/upload，上传合成文本文件</li>
+ * </ul>
+ *
+ * @example java -cp rag-bench/target/benchmarks.jar cn.google.bench.load.LoadScenario --scenario=chat --concurrency=32 --duration-s=60
+ */
+public class LoadScenario {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> map = CliArgs.parse(args);
+        String scenario = map.getOrDefault("scenario", "chat");
+        String baseUrl = map.getOrDefault("url", "http://127.0.0.1:8090");
+        String provider = map.getOrDefault("provider", "ollama");
+        String model = map.getOrDefault("model", "deepseek-r1:1.5b");
+        String ragTag = map.getOrDefault("rag-tag", "loadtest");
+        int concurrency = Integer.parseInt(map.getOrDefault("concurrency", "16"));
+        int durationSeconds = Integer.parseInt(map.getOrDefault("duration-s", "30"));
+        int fileWords = Integer.parseInt(map.getOrDefault("file-words", "2000"));
+        String format = map.get("format");
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newFixedThreadPool(Math.max(4, concurrency)))
+                .build();
+
+        Recorder recorder = new Recorder();
+        AtomicInteger sequence = new AtomicInteger();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            workers.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    int n = sequence.incrementAndGet();
+                    if ("upload".equals(scenario)) {
+                        upload(httpClient, baseUrl, ragTag, n, fileWords, recorder);
+                    } else {
+                        chat(httpClient, baseUrl, provider, model, ragTag, format, n, recorder);
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(durationSeconds + 300L, TimeUnit.SECONDS);
+        double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000d;
+
+        System.out.println(recorder.report(scenario, concurrency, elapsedSeconds));
+        System.exit(0);
+    }
+
+    private static void chat(HttpClient httpClient, String baseUrl, String provider, String model, String ragTag, String format, int n, Recorder recorder) {
+        String question = SyntheticCorpus.text(n, 12);
+        URI uri = URI.create(baseUrl + "/api/v1/" + provider + "/generate_stream_rag"
+                + "?model=" + encode(model) + "&ragTag=" + encode(ragTag) + "&message=" + encode(question)
+                + (format == null ? "" : "&format=" + encode(format)));
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Accept", "text/event-stream")
+                .timeout(Duration.ofMinutes(5))
+                .GET()
+                .build();
+
+        long begin = System.nanoTime();
+        long firstEvent = 0;
+        long events = 0;
+        long bytes = 0;
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() != 200) {
+                response.body().close();
+                recorder.failure("http_" + response.statusCode());
+                return;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    bytes += line.length() + 1;
+                    if (!line.startsWith("data:")) continue;
+                    if (firstEvent == 0) firstEvent = System.nanoTime();
+                    events++;
+                }
+            }
+            long end = System.nanoTime();
+            if (events == 0) {
+                recorder.failure("empty_stream");
+                return;
+            }
+            recorder.success(firstEvent - begin, end - begin, events, bytes);
+        } catch (Exception e) {
+            recorder.failure(e.getClass().getSimpleName());
+        }
+    }
+
+    private static void upload(HttpClient httpClient, String baseUrl, String ragTag, int n, int fileWords, Recorder recorder) {
+        String boundary = "----loadtest" + UUID.randomUUID();
+        String content = SyntheticCorpus.text(n, fileWords);
+        String body = "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"ragTag\"\r\n\r\n" + ragTag + "\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"loadtest-" + n + ".txt\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n" + content + "\r\n"
+                + "--" + boundary + "--\r\n";
+        byte[] payload = body.getBytes(StandardCharsets.UTF_8);
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/v1/rag/file/upload"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .timeout(Duration.ofMinutes(5))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                .build();
+
+        long begin = System.nanoTime();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            long end = System.nanoTime();
+            if (response.statusCode() != 200 || !response.body().contains("\"0000\"")) {
+                recorder.failure("http_" + response.statusCode());
+                return;
+            }
+            recorder.success(end - begin, end - begin, 1, payload.length);
+        } catch (Exception e) {
+            recorder.failure(e.getClass().getSimpleName());
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 线程安全的结果汇总
+     */
+    static final class Recorder {
+
+        private final List<long[]> samples = new ArrayList<>();
+        private final Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+        private final AtomicLong events = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+
+        synchronized void success(long ttftNanos, long totalNanos, long eventCount, long byteCount) {
+            samples.add(new long[]{ttftNanos, totalNanos});
+            events.addAndGet(eventCount);
+            bytes.addAndGet(byteCount);
+        }
+
+        void failure(String reason) {
+            errors.computeIfAbsent(reason, k -> new AtomicLong()).incrementAndGet();
+        }
+
+        synchronized String report(String scenario, int concurrency, double elapsedSeconds) {
+            long failed = errors.values().stream().mapToLong(AtomicLong::get).sum();
+            long total = samples.size() + failed;
+            long[] ttft = samples.stream().mapToLong(s -> s[0]).sorted().toArray();
+            long[] latency = samples.stream().mapToLong(s -> s[1]).sorted().toArray();
+
+            StringBuilder sb = new StringBuilder();
+            sb.append("scenario=").append(scenario).append(" concurrency=").append(concurrency)
+                    .append(String.format(" elapsed=%.1fs%n", elapsedSeconds));
+            sb.append(String.format("requests=%d ok=%d failed=%d errorRate=%.2f%%%n",
+                    total, samples.size(), failed, total == 0 ? 0d : failed * 100d / total));
+            sb.append(String.format("throughput=%.2f req/s events=%.1f/s bytes=%.1f KiB/s%n",
+                    samples.size() / elapsedSeconds, events.get() / elapsedSeconds, bytes.get() / 1024d / elapsedSeconds));
+            sb.append("ttft(ms)    ").append(percentiles(ttft)).append('\n');
+            sb.append("latency(ms) ").append(percentiles(latency)).append('\n');
+            if (!errors.isEmpty()) sb.append("errors=").append(errors).append('\n');
+            return sb.toString();
+        }
+
+        private static String percentiles(long[] sorted) {
+            if (sorted.length == 0) return "n/a";
+            return String.format("p50=%.1f p90=%.1f p99=%.1f max=%.1f",
+                    at(sorted, 0.50), at(sorted, 0.90), at(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+        }
+
+        private static double at(long[] sorted, double quantile) {
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+        }
+
+    }
+
+}
@@ -0,0 +1,308 @@
+package cn.google.bench.stub;
+
+import cn.google.bench.FakeEmbeddingClient;
+import cn.google.bench.SyntheticCorpus;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 桩模型服务：离线模拟 Ollama 与 OpenAI 的对话、向量化接口
+ * <p>
+ * 支持的接口：
+ * <ul>
+ *     <li>Ollama：POST /api/chat（流式 NDJSON / 非流式）、POST /api/embeddings、POST /api/generate、GET /api/tags</li>
+ *     <li>OpenAI：POST /v1/chat/completions（SSE 流式 / 非流式）、POST /v1/embeddings</li>
+ * </ul>
+ * 可配置首 token 延迟、生成速率、回复长度、向量化延迟以及失败与断流注入，
+ * 把 spring.ai.ollama.base-url 与 spring.ai.openai.base-url 指向本服务即可在任意 Linux 机器上压测。
+ *
+ * @example java -cp rag-bench/target/benchmarks.jar cn.google.bench.stub.StubModelServer --port=18080 --ttft-ms=300 --tps=40
+ */
+public class StubModelServer {
+
+    private final StubOptions options;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final FakeEmbeddingClient embeddingClient;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public StubModelServer(StubOptions options) {
+        this.options = options;
+        this.embeddingClient = new FakeEmbeddingClient(options.dimensions);
+    }
+
+    public static void main(String[] args) throws IOException {
+        StubOptions options = StubOptions.parse(args);
+        StubModelServer server = new StubModelServer(options);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        System.out.println("stub model server started: " + options);
+    }
+
+    public void start() throws IOException {
+        executor = Executors.newFixedThreadPool(options.threads);
+        server = HttpServer.create(new InetSocketAddress(options.port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/api/chat", exchange -> handle(exchange, this::ollamaChat));
+        server.createContext("/api/generate", exchange -> handle(exchange, this::ollamaGenerate));
+        server.createContext("/api/embeddings", exchange -> handle(exchange, this::ollamaEmbeddings));
+        server.createContext("/api/tags", exchange -> handle(exchange, this::ollamaTags));
+        server.createContext("/v1/chat/completions", exchange -> handle(exchange, this::openAiChat));
+        server.createContext("/v1/embeddings", exchange -> handle(exchange, this::openAiEmbeddings));
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) server.stop(0);
+        if (executor != null) executor.shutdownNow();
+        System.out.println("stub model server stopped, requests=" + requests.get() + ", injectedFailures=" + failures.get());
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange, JsonNode body) throws Exception;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) {
+        requests.incrementAndGet();
+        try {
+            byte[] raw = exchange.getRequestBody().readAllBytes();
+            JsonNode body = raw.length == 0 ? objectMapper.createObjectNode() : objectMapper.readTree(raw);
+            if (ThreadLocalRandom.current().nextDouble() < options.failureRate) {
+                failures.incrementAndGet();
+                writeJson(exchange, 500, objectMapper.createObjectNode().put("error", "injected failure"));
+                return;
+            }
+            handler.handle(exchange, body);
+        } catch (Exception e) {
+            // 客户端断开或注入的断流，忽略
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // ------------------------------------------------------------------ Ollama
+
+    private void ollamaChat(HttpExchange exchange, JsonNode body) throws Exception {
+        String model = body.path("model").asText("stub");
+        boolean stream = body.path("stream").asBoolean(true);
+        sleep(options.ttftMs);
+
+        if (!stream) {
+            ObjectNode response = ollamaChunk(model, answer(options.responseTokens), true);
+            writeJson(exchange, 200, response);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        streamTokens(out, token -> ollamaChunk(model, token, false), false);
+        out.write(line(ollamaChunk(model, "", true)));
+        out.flush();
+    }
+
+    private void ollamaGenerate(HttpExchange exchange, JsonNode body) throws Exception {
+        // 仅用于模型预加载 / keep_alive 探测，直接返回完成
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("model", body.path("model").asText("stub"));
+        response.put("created_at", Instant.now().toString());
+        response.put("response", "");
+        response.put("done", true);
+        writeJson(exchange, 200, response);
+    }
+
+    private void ollamaEmbeddings(HttpExchange exchange, JsonNode body) throws Exception {
+        sleep(options.embedLatencyMs);
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode embedding = response.putArray("embedding");
+        embeddingClient.embed(body.path("prompt").asText("")).forEach(embedding::add);
+        writeJson(exchange, 200, response);
+    }
+
+    private void ollamaTags(HttpExchange exchange, JsonNode body) throws Exception {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.putArray("models");
+        writeJson(exchange, 200, response);
+    }
+
+    private ObjectNode ollamaChunk(String model, String content, boolean done) {
+        ObjectNode chunk = objectMapper.createObjectNode();
+        chunk.put("model", model);
+        chunk.put("created_at", Instant.now().toString());
+        ObjectNode message = chunk.putObject("message");
+        message.put("role", "assistant");
+        message.put("content", content);
+        chunk.put("done", done);
+        if (done) {
+            chunk.put("eval_count", options.responseTokens);
+        }
+        return chunk;
+    }
+
+    // ------------------------------------------------------------------ OpenAI
+
+    private void openAiChat(HttpExchange exchange, JsonNode body) throws Exception {
+        String model = body.path("model").asText("stub");
+        boolean stream = body.path("stream").asBoolean(false);
+        String id = "chatcmpl-" + UUID.randomUUID();
+        sleep(options.ttftMs);
+
+        if (!stream) {
+            ObjectNode response = objectMapper.createObjectNode();
+            response.put("id", id);
+            response.put("object", "chat.completion");
+            response.put("created", Instant.now().getEpochSecond());
+            response.put("model", model);
+            ObjectNode choice = response.putArray("choices").addObject();
+            choice.put("index", 0);
+            ObjectNode message = choice.putObject("message");
+            message.put("role", "assistant");
+            message.put("content", answer(options.responseTokens));
+            choice.put("finish_reason", "stop");
+            ObjectNode usage = response.putObject("usage");
+            usage.put("prompt_tokens", 0);
+            usage.put("completion_tokens", options.responseTokens);
+            usage.put("total_tokens", options.responseTokens);
+            writeJson(exchange, 200, response);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        streamTokens(out, token -> openAiChunk(id, model, token, null), true);
+        out.write(sse(openAiChunk(id, model, null, "stop")));
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void openAiEmbeddings(HttpExchange exchange, JsonNode body) throws Exception {
+        List<String> inputs = new ArrayList<>();
+        JsonNode input = body.path("input");
+        if (input.isArray()) {
+            input.forEach(node -> inputs.add(node.asText()));
+        } else {
+            inputs.add(input.asText(""));
+        }
+        sleep(options.embedLatencyMs);
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("object", "list");
+        response.put("model", body.path("model").asText("stub"));
+        ArrayNode data = response.putArray("data");
+        for (int i = 0; i < inputs.size(); i++) {
+            ObjectNode item = data.addObject();
+            item.put("object", "embedding");
+            item.put("index", i);
+            ArrayNode embedding = item.putArray("embedding");
+            embeddingClient.embed(inputs.get(i)).forEach(embedding::add);
+        }
+        ObjectNode usage = response.putObject("usage");
+        usage.put("prompt_tokens", inputs.size());
+        usage.put("total_tokens", inputs.size());
+        writeJson(exchange, 200, response);
+    }
+
+    private ObjectNode openAiChunk(String id, String model, String content, String finishReason) {
+        ObjectNode chunk = objectMapper.createObjectNode();
+        chunk.put("id", id);
+        chunk.put("object", "chat.completion.chunk");
+        chunk.put("created", Instant.now().getEpochSecond());
+        chunk.put("model", model);
+        ObjectNode choice = chunk.putArray("choices").addObject();
+        choice.put("index", 0);
+        ObjectNode delta = choice.putObject("delta");
+        if (content != null) {
+            delta.put("role", "assistant");
+            delta.put("content", content);
+        }
+        if (finishReason == null) {
+            choice.putNull("finish_reason");
+        } else {
+            choice.put("finish_reason", finishReason);
+        }
+        return chunk;
+    }
+
+    // ------------------------------------------------------------------ 公共
+
+    private interface ChunkFactory {
+        ObjectNode create(String token);
+    }
+
+    /**
+     * 按配置的速率逐个写出 token；命中断流概率时中途抛出异常以关闭连接
+     */
+    private void streamTokens(OutputStream out, ChunkFactory factory, boolean eventStream) throws Exception {
+        long intervalNanos = options.tokensPerSecond <= 0 ? 0 : (long) (1_000_000_000L / options.tokensPerSecond);
+        int dropAt = ThreadLocalRandom.current().nextDouble() < options.dropRate
+                ? ThreadLocalRandom.current().nextInt(Math.max(1, options.responseTokens))
+                : -1;
+        long next = System.nanoTime();
+        for (int i = 0; i < options.responseTokens; i++) {
+            if (i == dropAt) {
+                failures.incrementAndGet();
+                throw new IOException("injected stream drop");
+            }
+            ObjectNode chunk = factory.create(token(i));
+            out.write(eventStream ? sse(chunk) : line(chunk));
+            out.flush();
+            next += intervalNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        }
+    }
+
+    private String answer(int tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tokens; i++) sb.append(token(i));
+        return sb.toString();
+    }
+
+    private static String token(int i) {
+        return SyntheticCorpus.text(i, 1);
+    }
+
+    private byte[] line(ObjectNode node) throws IOException {
+        return (objectMapper.writeValueAsString(node) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] sse(ObjectNode node) throws IOException {
+        return ("data: " + objectMapper.writeValueAsString(node) + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void writeJson(HttpExchange exchange, int status, ObjectNode node) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(node);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) Thread.sleep(millis);
+    }
+
+}
@@ -0,0 +1,56 @@
+package cn.google.bench.stub;
+
+import cn.google.bench.CliArgs;
+
+import java.util.Map;
+
+/**
+ * 桩模型服务配置
+ * <p>
+ * 通过 --key=value 形式的命令行参数设置，未指定的项使用默认值。
+ *
+ */
+public class StubOptions {
+
+    /** 监听端口 */
+    public int port = 18080;
+    /** 首 token 前的延迟（模拟 prefill），毫秒 */
+    public long ttftMs = 300;
+    /** 生成速率，token/s */
+    public double tokensPerSecond = 40;
+    /** 每次回复的 token 数 */
+    public int responseTokens = 120;
+    /** 单次向量化延迟，毫秒 */
+    public long embedLatencyMs = 15;
+    /** 向量维度 */
+    public int dimensions = 768;
+    /** 请求失败（HTTP 500）概率 */
+    public double failureRate = 0d;
+    /** 流式过程中断开连接的概率 */
+    public double dropRate = 0d;
+    /** 处理线程数 */
+    public int threads = 256;
+
+    public static StubOptions parse(String[] args) {
+        Map<String, String> map = CliArgs.parse(args);
+        StubOptions options = new StubOptions();
+        options.port = Integer.parseInt(map.getOrDefault("port", String.valueOf(options.port)));
+        options.ttftMs = Long.parseLong(map.getOrDefault("ttft-ms", String.valueOf(options.ttftMs)));
+        options.tokensPerSecond = Double.parseDouble(map.getOrDefault("tps", String.valueOf(options.tokensPerSecond)));
+        options.responseTokens = Integer.parseInt(map.getOrDefault("tokens", String.valueOf(options.responseTokens)));
+        options.embedLatencyMs = Long.parseLong(map.getOrDefault("embed-latency-ms", String.valueOf(options.embedLatencyMs)));
+        options.dimensions = Integer.parseInt(map.getOrDefault("dimensions", String.valueOf(options.dimensions)));
+        options.failureRate = Double.parseDouble(map.getOrDefault("failure-rate", String.valueOf(options.failureRate)));
+        options.dropRate = Double.parseDouble(map.getOrDefault("drop-rate", String.valueOf(options.dropRate)));
+        options.threads = Integer.parseInt(map.getOrDefault("threads", String.valueOf(options.threads)));
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        return "port=" + port + ", ttftMs=" + ttftMs + ", tps=" + tokensPerSecond + ", tokens=" + responseTokens
+                + ", embedLatencyMs=" + embedLatencyMs + ", dimensions=" + dimensions
+                + ", failureRate=" + failureRate + ", dropRate=" + dropRate + ", threads=" + threads;
+    }
+
+}
@@ -0,0 +1,30 @@
+package cn.google.http;
+
+import cn.google.response.Response;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * 对话控制器的参数错误处理
+ * <p>
+ * 流式与 NDJSON 接口在开始输出之前校验请求（如批量问答的问题数、topK），校验失败时抛出 IllegalArgumentException；
+ * 这里统一转换为与其余接口一致的 {@link Response}（code 0001），而不是 500。
+ * 响应显式使用 application/json，不受接口 produces（如 application/x-ndjson）的内容协商影响。
+ *
+ */
+@Slf4j
+@RestControllerAdvice(assignableTypes = {OllamaController.class, OpenAiController.class})
+public class AiExceptionHandler {
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Response<String>> handleIllegalArgument(IllegalArgumentException e) {
+        log.warn("请求参数错误 {}", e.getMessage());
+        return ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Response.<String>builder().code("0001").info("请求参数错误:" + e.getMessage()).build());
+    }
+
+}
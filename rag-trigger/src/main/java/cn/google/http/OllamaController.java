@@ -1,24 +1,33 @@
 package cn.google.http;
 
 import cn.google.IAiService;
+import cn.google.rag.BatchRagService;
+import cn.google.metrics.RagMetrics;
+import cn.google.request.BatchRagRequest;
+import cn.google.request.RagFilter;
+import cn.google.response.BatchRagResult;
+import cn.google.rag.MetadataFilter;
+import cn.google.rag.RagPromptAssembler;
+import cn.google.rag.ReadOnlyPgVectorStore;
+import cn.google.rag.RagSessionChat;
+import cn.google.rag.OllamaKeepAlive;
+import cn.google.stream.DeltaStreamEncoder;
+import cn.google.stream.GenerationGuard;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.ChatResponse;
 import org.springframework.ai.chat.messages.Message;
-import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.ollama.OllamaChatClient;
 import org.springframework.ai.ollama.api.OllamaOptions;
-import org.springframework.ai.vectorstore.PgVectorStore;
 import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Ollama AI模型控制器
@@ -27,6 +36,8 @@ import java.util.stream.Collectors;
  * 1. 同步对话生成
  * 2. 流式对话生成
  * 3. 基于RAG的智能问答
+ * 4. 会话式RAG多轮对话
+ * 5. 批量知识库问答
  *
  */
 @RestController()
@@ -38,7 +49,19 @@ public class OllamaController implements IAiService {
     private OllamaChatClient chatClient;
 
     @Resource
-    private PgVectorStore pgVectorStore;
+    private ReadOnlyPgVectorStore readPgVectorStore;
+    @Resource
+    private RagMetrics ragMetrics;
+    @Resource
+    private DeltaStreamEncoder deltaStreamEncoder;
+    @Resource
+    private RagSessionChat ragSessionChat;
+    @Resource
+    private OllamaKeepAlive ollamaKeepAlive;
+    @Resource
+    private GenerationGuard generationGuard;
+    @Resource
+    private BatchRagService batchRagService;
 
     /**
      * 同步生成AI回复
@@ -54,7 +77,9 @@ public class OllamaController implements IAiService {
     @RequestMapping(value = "generate", method = RequestMethod.GET)
     @Override
     public ChatResponse generate(@RequestParam("model") String model, @RequestParam("message") String message) {
-        return chatClient.call(new Prompt(message, OllamaOptions.create().withModel(model)));
+        ChatResponse response = ragMetrics.timeCall("ollama", model, () -> chatClient.call(new Prompt(message, OllamaOptions.create().withModel(model))));
+        ollamaKeepAlive.pin(model);
+        return response;
     }
 
     /**
@@ -71,7 +96,9 @@ public class OllamaController implements IAiService {
     @RequestMapping(value = "generate_stream", method = RequestMethod.GET)
     @Override
     public Flux<ChatResponse> generateStream(@RequestParam("model") String model, @RequestParam("message") String message) {
-        return chatClient.stream(new Prompt(message, OllamaOptions.create().withModel(model)));
+        return generationGuard.guard("generate_stream", "ollama", model, ragMetrics.observeStream("generate_stream", "ollama", model, null,
+                chatClient.stream(new Prompt(message, OllamaOptions.create().withModel(model)))))
+                .doFinally(signal -> ollamaKeepAlive.pin(model));
     }
 
     /**
@@ -86,42 +113,119 @@ public class OllamaController implements IAiService {
      * @param model Ollama模型名称
      * @param ragTag 知识库标签，用于检索相关文档
      * @param message 用户输入的消息
+     * @param filter 附加的元数据过滤条件（可选查询参数 source、fileTypes、repoCommit、ingestedAfter、ingestedBefore）
      * @return 基于知识库的流式AI回复
      */
     @RequestMapping(value = "generate_stream_rag", method = RequestMethod.GET)
     @Override
-    public Flux<ChatResponse> generateStreamRag(@RequestParam("model") String model, @RequestParam("ragTag") String ragTag, @RequestParam("message") String message) {
-        // 系统提示词模板，要求AI基于文档内容回答，并使用中文回复
-        String SYSTEM_PROMPT = """
-                Use the information from the DOCUMENTS section to provide accurate answers but act as if you knew this information innately.
-                If unsure, simply state that you don't know.
-                Another thing you need to note is that your reply must be in Chinese!
-                DOCUMENTS:
-                    {documents}
-                """;
-
+    public Flux<ChatResponse> generateStreamRag(@RequestParam("model") String model, @RequestParam("ragTag") String ragTag, @RequestParam("message") String message, RagFilter filter) {
         // 在指定知识库中检索相关文档
         SearchRequest request = SearchRequest.query(message)
-                .withTopK(5)  // 检索前5个最相关的文档
-                .withFilterExpression("knowledge == '" + ragTag + "'");  // 过滤指定知识库
+                .withTopK(5);  // 检索前5个最相关的文档
+        MetadataFilter metadataFilter = MetadataFilter.knowledge(ragTag).and(filter);  // 过滤指定知识库及附加条件
 
-        List<Document> documents = pgVectorStore.similaritySearch(request);
-        String documentCollectors = documents.stream().map(Document::getContent).collect(Collectors.joining());
-        
-        // 创建系统消息，包含检索到的文档内容
-        Message ragMessage = new SystemPromptTemplate(SYSTEM_PROMPT).createMessage(Map.of("documents", documentCollectors));
-
-        // 构建消息列表：用户消息 + 系统消息（包含文档上下文）
-        List<Message> messages = new ArrayList<>();
-        messages.add(new UserMessage(message));
-        messages.add(ragMessage);
+        // 检索在订阅后执行，客户端在检索期间断开时不再发起生成
+        Mono<List<Message>> retrieval = generationGuard.retrieval(() -> {
+            List<Document> documents = ragMetrics.timeRetrieval("ollama", model, ragTag, () -> readPgVectorStore.similaritySearch(metadataFilter, request));
+            return ragMetrics.timePromptAssembly("ollama", model, ragTag, () -> RagPromptAssembler.assemble(message, documents));
+        });
 
         // 使用Ollama模型生成基于知识库的回复
-        return chatClient.stream(new Prompt(
-                messages,
-                OllamaOptions.create()
-                        .withModel(model)
-        ));
+        return generationGuard.guard("generate_stream_rag", "ollama", model, retrieval.flatMapMany(messages ->
+                ragMetrics.observeStream("generate_stream_rag", "ollama", model, ragTag, chatClient.stream(new Prompt(
+                        messages,
+                        OllamaOptions.create()
+                                .withModel(model)
+                ))))).doFinally(signal -> ollamaKeepAlive.pin(model));
+    }
+
+    /**
+     * 流式生成AI回复（紧凑增量格式）
+     * 
+     * 请求携带 format=delta 时命中，只输出新增文本并合并多个 token 后写出
+     * 
+     * @param model Ollama模型名称
+     * @param message 用户输入的消息
+     * @return 增量事件流
+     */
+    @RequestMapping(value = "generate_stream", params = "format=" + DeltaStreamEncoder.FORMAT, method = RequestMethod.GET)
+    @Override
+    public Flux<ServerSentEvent<String>> generateStreamDelta(@RequestParam("model") String model, @RequestParam("message") String message) {
+        return deltaStreamEncoder.encode("generate_stream", "ollama", generateStream(model, message));
+    }
+
+    /**
+     * 基于RAG的流式AI回复生成（紧凑增量格式）
+     * 
+     * 请求携带 format=delta 时命中，检索与生成流程同 generate_stream_rag
+     * 
+     * @param model Ollama模型名称
+     * @param ragTag 知识库标签，用于检索相关文档
+     * @param message 用户输入的消息
+     * @param filter 附加的元数据过滤条件（可选查询参数 source、fileTypes、repoCommit、ingestedAfter、ingestedBefore）
+     * @return 增量事件流
+     */
+    @RequestMapping(value = "generate_stream_rag", params = "format=" + DeltaStreamEncoder.FORMAT, method = RequestMethod.GET)
+    @Override
+    public Flux<ServerSentEvent<String>> generateStreamRagDelta(@RequestParam("model") String model, @RequestParam("ragTag") String ragTag, @RequestParam("message") String message, RagFilter filter) {
+        return deltaStreamEncoder.encode("generate_stream_rag", "ollama", generateStreamRag(model, ragTag, message, filter));
+    }
+
+    /**
+     * 会话式RAG流式对话
+     * 
+     * 提示词按 系统指令 → 固定文档上下文 → 历史对话 → 本轮问题 排列，同一会话的后续轮次复用首轮上下文，
+     * 本轮提示词是上一轮提示词加回复的延续，模型只需预填充新增部分；结束后重新固定该模型的 keep_alive，避免模型卸载导致缓存失效
+     * 
+     * @param model Ollama模型名称
+     * @param ragTag 知识库标签，用于检索相关文档
+     * @param conversationId 会话ID
+     * @param message 用户输入的消息
+     * @param filter 附加的元数据过滤条件（可选查询参数 source、fileTypes、repoCommit、ingestedAfter、ingestedBefore）
+     * @return 基于知识库的流式AI回复
+     */
+    @RequestMapping(value = "chat_stream_rag", method = RequestMethod.GET)
+    @Override
+    public Flux<ChatResponse> chatStreamRag(@RequestParam("model") String model, @RequestParam("ragTag") String ragTag,
+                                            @RequestParam("conversationId") String conversationId, @RequestParam("message") String message, RagFilter filter) {
+        return generationGuard.guard("chat_stream_rag", "ollama", model, ragSessionChat.stream("chat_stream_rag", "ollama", model, ragTag, conversationId, message, filter,
+                        messages -> chatClient.stream(new Prompt(messages, OllamaOptions.create().withModel(model)))))
+                .doFinally(signal -> ollamaKeepAlive.pin(model));
+    }
+
+    /**
+     * 会话式RAG流式对话（紧凑增量格式）
+     * 
+     * @param model Ollama模型名称
+     * @param ragTag 知识库标签，用于检索相关文档
+     * @param conversationId 会话ID
+     * @param message 用户输入的消息
+     * @param filter 附加的元数据过滤条件（可选查询参数 source、fileTypes、repoCommit、ingestedAfter、ingestedBefore）
+     * @return 增量事件流
+     */
+    @RequestMapping(value = "chat_stream_rag", params = "format=" + DeltaStreamEncoder.FORMAT, method = RequestMethod.GET)
+    @Override
+    public Flux<ServerSentEvent<String>> chatStreamRagDelta(@RequestParam("model") String model, @RequestParam("ragTag") String ragTag,
+                                                            @RequestParam("conversationId") String conversationId, @RequestParam("message") String message, RagFilter filter) {
+        return deltaStreamEncoder.encode("chat_stream_rag", "ollama", chatStreamRag(model, ragTag, conversationId, message, filter));
+    }
+
+    /**
+     * 批量知识库问答
+     * 
+     * 整批问题分批向量化与检索，生成按 rag.batch.concurrency 并发执行，结果按完成顺序以 NDJSON 逐行返回；
+     * 整批结束后重新固定该模型的 keep_alive
+     * 
+     * @param model Ollama模型名称
+     * @param request 问题列表
+     * @return 逐条完成的问答结果
+     */
+    @RequestMapping(value = "batch_rag", method = RequestMethod.POST, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Override
+    public Flux<BatchRagResult> batchRag(@RequestParam("model") String model, @RequestBody BatchRagRequest request) {
+        return batchRagService.execute("ollama", model, request,
+                        messages -> chatClient.stream(new Prompt(messages, OllamaOptions.create().withModel(model))))
+                .doFinally(signal -> ollamaKeepAlive.pin(model));
     }
 
 }
@@ -1,30 +1,44 @@
 package cn.google.http;
 
 import cn.google.IRAGService;
+import cn.google.rag.ChunkUpserter;
+import cn.google.rag.DocumentReaderRegistry;
+import cn.google.rag.EmbeddingMigration;
+import cn.google.rag.IngestQueue;
+import cn.google.rag.KnowledgeSnapshotService;
+import cn.google.rag.RagTagRegistry;
+import cn.google.response.EmbeddingMigrationStatus;
+import cn.google.response.IngestJobStatus;
+import cn.google.response.RagTagStats;
 import cn.google.response.Response;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
-import org.redisson.api.RList;
-import org.redisson.api.RedissonClient;
-import org.springframework.ai.document.Document;
-import org.springframework.ai.ollama.OllamaChatClient;
-import org.springframework.ai.reader.tika.TikaDocumentReader;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-import org.springframework.ai.vectorstore.PgVectorStore;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
-import org.springframework.core.io.PathResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * RAG（检索增强生成）控制器
@@ -33,6 +47,8 @@ import java.util.List;
  * 1. 知识库标签查询
  * 2. 文件上传和向量化
  * 3. Git仓库自动分析和知识提取
+ * 4. 知识库快照导出与导入
+ * 5. 切换嵌入模型（在线重新向量化）
  *
  */
 @Slf4j
@@ -42,31 +58,62 @@ import java.util.List;
 public class RAGController implements IRAGService {
 
     @Resource
-    private OllamaChatClient ollamaChatClient;
+    private RagTagRegistry ragTagRegistry;
     @Resource
-    private TokenTextSplitter tokenTextSplitter;
+    private IngestQueue ingestQueue;
     @Resource
-    private SimpleVectorStore simpleVectorStore;
+    private ChunkUpserter chunkUpserter;
     @Resource
-    private PgVectorStore pgVectorStore;
+    private KnowledgeSnapshotService knowledgeSnapshotService;
     @Resource
-    private RedissonClient redissonClient;
+    private EmbeddingMigration embeddingMigration;
+
+    @Value("${rag.ingest.await-timeout-ms:1800000}")
+    private long ingestAwaitTimeoutMs;
+    @Value("${rag.ingest.repo-max-file-mb:5}")
+    private long repoMaxFileMb;
 
     /**
      * 查询所有可用的知识库标签列表
      * 
-     * 从Redis中获取所有已创建的知识库标签
+     * 从标签注册表的本地缓存中读取标签列表快照，并以快照版本号作为 ETag；
+     * 客户端携带 If-None-Match 且版本未变化时直接返回 304，不再传输列表内容。
      * 
      * @return 包含所有知识库标签的响应
      */
     @RequestMapping(value = "query_rag_tag_list", method = RequestMethod.GET)
     @Override
     public Response<List<String>> queryRagTagList() {
-        RList<String> elements = redissonClient.getList("ragTag");
+        RagTagRegistry.TagSnapshot snapshot = ragTagRegistry.snapshot();
+
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        if (attributes != null && new ServletWebRequest(attributes.getRequest(), attributes.getResponse()).checkNotModified(snapshot.etag())) {
+            return null;
+        }
+
         return Response.<List<String>>builder()
                 .code("0000")
                 .info("调用成功")
-                .data(elements)
+                .data(snapshot.tags())
+                .build();
+    }
+
+    /**
+     * 查询指定知识库的统计信息
+     * 
+     * @param ragTag 知识库标签
+     * @return 包含文档数、片段数、字节数及最后更新时间的响应
+     */
+    @RequestMapping(value = "query_rag_tag_stats", method = RequestMethod.GET)
+    @Override
+    public Response<RagTagStats> queryRagTagStats(@RequestParam("ragTag") String ragTag) {
+        if (!ragTagRegistry.contains(ragTag)) {
+            return Response.<RagTagStats>builder().code("0001").info("知识库不存在").build();
+        }
+        return Response.<RagTagStats>builder()
+                .code("0000")
+                .info("调用成功")
+                .data(ragTagRegistry.stats(ragTag))
                 .build();
     }
 
@@ -74,53 +121,59 @@ public class RAGController implements IRAGService {
      * 上传文件到指定知识库
      * 
      * 处理流程：
-     * 1. 使用Tika文档读取器解析上传的文件
-     * 2. 使用文本分割器将文档分割成适合向量化的片段
-     * 3. 为每个文档片段添加知识库标签元数据
-     * 4. 将文档片段存储到PostgreSQL向量数据库
-     * 5. 在Redis中记录知识库标签
+     * 1. 在Redis中记录知识库标签
+     * 2. 创建入库任务，每个文件作为一个子任务写入分布式入库队列
+     * 3. 各节点的工作线程完成解析、分割、打标签、向量化存储
+     * 4. 等待任务完成屏障，返回任务ID
      * 
      * @param ragTag 知识库标签，用于标识和管理文档
      * @param files 要上传的文件列表
-     * @return 上传操作的结果响应
+     * @return 上传操作的结果响应，data 为入库任务ID
      */
     @RequestMapping(value = "file/upload", method = RequestMethod.POST, headers = "content-type=multipart/form-data")
     @Override
     // @RequestParam("ragTag")：接收前端传来的知识库标签参数。 
     public Response<String> uploadFile(@RequestParam("ragTag") String ragTag, @RequestParam("file") List<MultipartFile> files) {
         log.info("上传知识库开始 {}", ragTag);
-        
-        for (MultipartFile file : files) {
-            // 使用Tika解析文档内容 
-            // 用TikaDocumentReader（基于Apache Tika）解析每个文件内容，自动识别多种文档格式（如PDF、Word、TXT等）。
-            // files.parallelStream().forEach(file -> {
-            //     TikaDocumentReader reader = new TikaDocumentReader(file.getResource());
-            //     List<Document> docs = reader.get();
-            //     // 后续处理
-            // });
-
-            TikaDocumentReader documentReader = new TikaDocumentReader(file.getResource());
-            List<Document> documents = documentReader.get();  // documentReader.get()方法将文件内容读取为Document对象列表。
-            
-            // 使用文本分割器将文档分割成片段
-            List<Document> documentSplitterList = tokenTextSplitter.apply(documents);
-
-            // 为原始文档和分割后的文档片段添加知识库标签
-            documents.forEach(doc -> doc.getMetadata().put("knowledge", ragTag));
-            documentSplitterList.forEach(doc -> doc.getMetadata().put("knowledge", ragTag));
-
-            // 将文档片段存储到向量数据库 
-            pgVectorStore.accept(documentSplitterList);
-
-            // 在Redis中记录知识库标签
-            RList<String> elements = redissonClient.getList("ragTag");
-            if (!elements.contains(ragTag)) {
-                elements.add(ragTag);
+
+        // 在Redis中记录知识库标签（SADD，原子且幂等）
+        ragTagRegistry.register(ragTag);
+
+        String jobId = ingestQueue.createJob(ragTag, files.size());
+        int submitted = 0;
+        try {
+            for (MultipartFile file : files) {
+                ingestQueue.enqueue(jobId, ragTag, file.getOriginalFilename(), null, file.getBytes());
+                submitted++;
+            }
+        } catch (IOException | RuntimeException e) {
+            // 未提交的文件记为失败，完成屏障不会一直等待
+            log.error("上传知识库失败 {} jobId={} submitted={} total={}", ragTag, jobId, submitted, files.size(), e);
+            for (int i = submitted; i < files.size(); i++) {
+                ingestQueue.markFailed(jobId);
             }
+            return Response.<String>builder().code("0001").info("上传文件失败").data(jobId).build();
         }
 
-        log.info("上传知识库完成 {}", ragTag);
-        return Response.<String>builder().code("0000").info("调用成功").build();
+        Response<String> response = awaitJob(jobId);
+        log.info("上传知识库完成 {} jobId={}", ragTag, jobId);
+        return response;
+    }
+
+    /**
+     * 查询入库任务进度
+     * 
+     * @param jobId 入库任务ID
+     * @return 任务进度
+     */
+    @RequestMapping(value = "query_ingest_job", method = RequestMethod.GET)
+    @Override
+    public Response<IngestJobStatus> queryIngestJob(@RequestParam("jobId") String jobId) {
+        IngestJobStatus status = ingestQueue.status(jobId);
+        if (status == null) {
+            return Response.<IngestJobStatus>builder().code("0001").info("任务不存在或已过期").build();
+        }
+        return Response.<IngestJobStatus>builder().code("0000").info("调用成功").data(status).build();
     }
 
     /**
@@ -128,17 +181,16 @@ public class RAGController implements IRAGService {
      * 
      * 处理流程：
      * 1. 克隆指定的Git仓库到本地临时目录
-     * 2. 遍历仓库中的所有文件
-     * 3. 使用Tika解析支持的文件格式
-     * 4. 将解析的内容分割并向量化
-     * 5. 存储到PostgreSQL向量数据库
-     * 6. 清理临时文件
-     * 7. 在Redis中记录知识库标签
+     * 2. 遍历仓库中的所有文件（跳过 .git 目录、超过 rag.ingest.repo-max-file-mb 的文件与非文档格式的二进制文件）
+     * 3. 创建入库任务，每个文件作为一个子任务写入分布式入库队列
+     * 4. 清理临时文件
+     * 5. 在Redis中记录知识库标签
+     * 6. 等待任务完成屏障，返回任务ID
      * 
      * @param repoUrl Git仓库URL
      * @param userName Git用户名
      * @param token Git访问令牌
-     * @return 分析操作的结果响应
+     * @return 分析操作的结果响应，data 为入库任务ID
      * @throws Exception 当克隆或解析过程中出现错误时抛出
      */
     @RequestMapping(value = "analyze_git_repository", method = RequestMethod.POST)
@@ -158,53 +210,236 @@ public class RAGController implements IRAGService {
                 .setCredentialsProvider(new UsernamePasswordCredentialsProvider(userName, token))
                 .call();
 
-        // 遍历仓库中的所有文件
-        Files.walkFileTree(Paths.get(localPath), new SimpleFileVisitor<>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                log.info("{} 遍历解析路径，上传知识库:{}", repoProjectName, file.getFileName());
-                try {
-                    // 使用Tika解析文件内容
-                    TikaDocumentReader reader = new TikaDocumentReader(new PathResource(file));
-                    List<Document> documents = reader.get();
-                    
-                    // 分割文档内容
-                    List<Document> documentSplitterList = tokenTextSplitter.apply(documents);
-
-                    // 为文档添加知识库标签
-                    documents.forEach(doc -> doc.getMetadata().put("knowledge", repoProjectName));
-                    documentSplitterList.forEach(doc -> doc.getMetadata().put("knowledge", repoProjectName));
-
-                    // 存储到向量数据库
-                    pgVectorStore.accept(documentSplitterList);
-                } catch (Exception e) {
-                    log.error("遍历解析路径，上传知识库失败:{}", file.getFileName());
+        Path root = Paths.get(localPath);
+        String jobId;
+        try {
+            // 记录克隆时的提交ID，写入片段元数据
+            ObjectId head = git.getRepository().resolve(Constants.HEAD);
+            String repoCommit = head == null ? null : head.getName();
+
+            // 遍历仓库中的所有文件，跳过超过大小上限的文件与非文档格式的二进制文件（图片、压缩包、编译产物等）
+            long maxFileBytes = repoMaxFileMb * 1024 * 1024;
+            List<Path> paths = new ArrayList<>();
+            int[] skipped = {0};
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    // Git 对象库为压缩后的二进制，不入库
+                    return ".git".equals(String.valueOf(dir.getFileName())) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
                 }
 
-                return FileVisitResult.CONTINUE;
-            }
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (attrs.size() > maxFileBytes || isBinaryNonDocument(file)) {
+                        log.info("跳过文件: {} size={}", file, attrs.size());
+                        skipped[0]++;
+                    } else {
+                        paths.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
 
-            @Override
-            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-                log.info("Failed to access file: {} - {}", file.toString(), exc.getMessage());
-                return FileVisitResult.CONTINUE;
-            }
-        });
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                    log.info("Failed to access file: {} - {}", file.toString(), exc.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            log.info("{} 待入库文件 {} 个，跳过 {} 个", repoProjectName, paths.size(), skipped[0]);
 
-        // 清理临时目录
-        FileUtils.deleteDirectory(new File(localPath));
+            // 每个文件作为一个子任务入队，由各节点的工作线程并行处理
+            jobId = ingestQueue.createJob(repoProjectName, paths.size());
+            int submitted = 0;
+            try {
+                for (Path file : paths) {
+                    log.info("{} 遍历解析路径，上传知识库:{}", repoProjectName, file.getFileName());
+                    try {
+                        // 以仓库内相对路径作为来源，同名文件不会互相覆盖
+                        String source = root.relativize(file).toString().replace(File.separatorChar, '/');
+                        ingestQueue.enqueue(jobId, repoProjectName, source, repoCommit, Files.readAllBytes(file));
+                    } catch (IOException e) {
+                        log.error("遍历解析路径，读取文件失败:{}", file.getFileName());
+                        ingestQueue.markFailed(jobId);
+                    }
+                    submitted++;
+                }
+            } catch (RuntimeException e) {
+                // 入队中途失败（如 Redis 异常）时，未提交的文件记为失败，完成屏障不会一直等待
+                log.error("遍历解析路径，入队失败 jobId={} submitted={} total={}", jobId, submitted, paths.size(), e);
+                for (int i = submitted; i < paths.size(); i++) {
+                    ingestQueue.markFailed(jobId);
+                }
+                throw e;
+            }
+        } finally {
+            // 清理临时目录
+            git.close();
+            FileUtils.deleteDirectory(new File(localPath));
+        }
 
         // 在Redis中记录知识库标签
-        RList<String> elements = redissonClient.getList("ragTag");
-        if (!elements.contains(repoProjectName)) {
-            elements.add(repoProjectName);
+        ragTagRegistry.register(repoProjectName);
+
+        Response<String> response = awaitJob(jobId);
+        log.info("遍历解析路径，上传完成:{} jobId={}", repoUrl, jobId);
+        return response;
+    }
+
+    /**
+     * 修复向量表中的重复片段
+     * 
+     * 删除同一知识库中内容完全相同的历史随机ID行（不区分来源，兼容来源改为仓库相对路径之前写入的行），并将历史随机ID改写为内容哈希ID，
+     * 此后重复上传同一文件不再产生新行。
+     * 
+     * @param ragTag 知识库标签，为空时处理全部知识库
+     * @return 修复结果响应
+     */
+    @RequestMapping(value = "repair_vector_store", method = RequestMethod.POST)
+    @Override
+    public Response<String> repairVectorStore(@RequestParam(value = "ragTag", required = false) String ragTag) {
+        ChunkUpserter.RepairResult result = chunkUpserter.repair(ragTag, 1000);
+        return Response.<String>builder()
+                .code("0000")
+                .info("调用成功")
+                .data("deleted=" + result.deleted() + ", rekeyed=" + result.rekeyed())
+                .build();
+    }
+
+    /**
+     * 导出知识库快照
+     * 
+     * 按块流式写出，不在内存中缓存整个知识库。
+     * 
+     * @param ragTag 知识库标签
+     * @return 快照文件下载流
+     */
+    @RequestMapping(value = "snapshot/export", method = RequestMethod.GET)
+    @Override
+    public ResponseEntity<StreamingResponseBody> exportSnapshot(@RequestParam("ragTag") String ragTag) {
+        if (!ragTagRegistry.contains(ragTag)) {
+            return ResponseEntity.notFound().build();
         }
+        StreamingResponseBody body = out -> knowledgeSnapshotService.export(ragTag, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(ragTag + ".ragsnap", StandardCharsets.UTF_8).build().toString())
+                .body(body);
+    }
 
-        git.close();
+    /**
+     * 导入知识库快照
+     * 
+     * @param ragTag 导入后的知识库标签，为空时沿用快照中的标签
+     * @param target 导入目标：pg（默认）或 memory
+     * @param file 快照文件
+     * @return 导入结果响应
+     */
+    @RequestMapping(value = "snapshot/import", method = RequestMethod.POST, headers = "content-type=multipart/form-data")
+    @Override
+    public Response<String> importSnapshot(@RequestParam(value = "ragTag", required = false) String ragTag,
+                                           @RequestParam(value = "target", required = false) String target,
+                                           @RequestParam("file") MultipartFile file) {
+        try (InputStream in = file.getInputStream()) {
+            KnowledgeSnapshotService.ImportResult result = knowledgeSnapshotService.importSnapshot(in, ragTag, KnowledgeSnapshotService.Target.of(target));
+            return Response.<String>builder()
+                    .code("0000")
+                    .info("调用成功")
+                    .data("ragTag=" + result.ragTag() + ", rows=" + result.rows() + ", sources=" + result.sources() + ", elapsedMs=" + result.elapsedMs())
+                    .build();
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("导入知识库快照失败 {}", file.getOriginalFilename(), e);
+            return Response.<String>builder().code("0001").info("导入快照失败:" + e.getMessage()).build();
+        }
+    }
 
-        log.info("遍历解析路径，上传完成:{}", repoUrl);
+    /**
+     * 启动嵌入模型迁移
+     * 
+     * 立即返回迁移任务ID，通过 query_embedding_migration 查询进度。同一时间只允许一个迁移任务。
+     * 
+     * @param targetModel 目标嵌入模型，如 text-embedding-3-small
+     * @param ragTag 知识库标签，为空时迁移全部知识库
+     * @return 迁移任务ID
+     */
+    @RequestMapping(value = "embedding_migration/start", method = RequestMethod.POST)
+    @Override
+    public Response<String> startEmbeddingMigration(@RequestParam("targetModel") String targetModel,
+                                                    @RequestParam(value = "ragTag", required = false) String ragTag) {
+        try {
+            String jobId = embeddingMigration.start(targetModel, ragTag);
+            log.info("嵌入模型迁移已启动 targetModel={} ragTag={} jobId={}", targetModel, ragTag, jobId);
+            return Response.<String>builder().code("0000").info("调用成功").data(jobId).build();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return Response.<String>builder().code("0001").info("启动迁移失败:" + e.getMessage()).build();
+        }
+    }
 
-        return Response.<String>builder().code("0000").info("调用成功").build();
+    /**
+     * 查询嵌入模型迁移进度
+     * 
+     * @param jobId 迁移任务ID
+     * @return 迁移进度
+     */
+    @RequestMapping(value = "query_embedding_migration", method = RequestMethod.GET)
+    @Override
+    public Response<EmbeddingMigrationStatus> queryEmbeddingMigration(@RequestParam("jobId") String jobId) {
+        EmbeddingMigrationStatus status = embeddingMigration.status(jobId);
+        if (status == null) {
+            return Response.<EmbeddingMigrationStatus>builder().code("0001").info("任务不存在或已过期").build();
+        }
+        return Response.<EmbeddingMigrationStatus>builder().code("0000").info("调用成功").data(status).build();
+    }
+
+    /**
+     * 完成嵌入模型迁移
+     * 
+     * 要求全部知识库都已切换到影子表。完成后将 spring.ai.rag.embed 改为目标模型并滚动重启。
+     * 
+     * @return 执行结果响应
+     */
+    @RequestMapping(value = "embedding_migration/finalize", method = RequestMethod.POST)
+    @Override
+    public Response<String> finalizeEmbeddingMigration() {
+        try {
+            embeddingMigration.finalizeMigration();
+            return Response.<String>builder().code("0000").info("调用成功").build();
+        } catch (IllegalStateException e) {
+            return Response.<String>builder().code("0001").info("完成迁移失败:" + e.getMessage()).build();
+        }
+    }
+
+    /**
+     * 等待入库任务完成并转换为响应
+     * 
+     * @param jobId 入库任务ID
+     * @return 全部成功返回 0000；部分失败或等待超时返回 0001，可通过 query_ingest_job 继续查询进度
+     */
+    private Response<String> awaitJob(String jobId) {
+        try {
+            if (!ingestQueue.await(jobId, ingestAwaitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return Response.<String>builder().code("0001").info("入库仍在进行中").data(jobId).build();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Response.<String>builder().code("0001").info("入库仍在进行中").data(jobId).build();
+        }
+
+        IngestJobStatus status = ingestQueue.status(jobId);
+        if (status != null && status.getFailed() > 0) {
+            return Response.<String>builder().code("0001").info("部分文件入库失败:" + status.getFailed()).data(jobId).build();
+        }
+        return Response.<String>builder().code("0000").info("调用成功").data(jobId).build();
+    }
+
+    /**
+     * 文件内容为二进制且不是 Tika 可解析的文档格式；只读取前缀探测
+     */
+    private static boolean isBinaryNonDocument(Path file) throws IOException {
+        if (DocumentReaderRegistry.isDocumentFile(file.getFileName().toString())) return false;
+        try (InputStream in = Files.newInputStream(file)) {
+            return DocumentReaderRegistry.isBinary(in.readNBytes(DocumentReaderRegistry.BINARY_PROBE_BYTES));
+        }
     }
 
     /**
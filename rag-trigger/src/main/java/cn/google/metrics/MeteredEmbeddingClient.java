@@ -0,0 +1,74 @@
+package cn.google.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+
+/**
+ * 带指标采集的嵌入客户端装饰器
+ * <p>
+ * 包装实际的 Ollama / OpenAI 嵌入客户端，记录每次向量化调用的耗时与批大小，
+ * 从而把查询向量化耗时从 similaritySearch 中单独拆分出来。
+ *
+ */
+public class MeteredEmbeddingClient implements EmbeddingClient {
+
+    private final EmbeddingClient delegate;
+    private final Timer timer;
+    private final DistributionSummary batchSize;
+
+    public MeteredEmbeddingClient(EmbeddingClient delegate, String model, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.timer = Timer.builder("rag.embedding")
+                .description("文本向量化耗时")
+                .tag(RagMetrics.TAG_MODEL, model)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("rag.embedding.batch.size")
+                .description("单次向量化的文本条数")
+                .tag(RagMetrics.TAG_MODEL, model)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        batchSize.record(request.getInstructions().size());
+        return timer.record(() -> delegate.call(request));
+    }
+
+    @Override
+    public List<Double> embed(String text) {
+        batchSize.record(1);
+        return timer.record(() -> delegate.embed(text));
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        batchSize.record(1);
+        return timer.record(() -> delegate.embed(document));
+    }
+
+    @Override
+    public List<List<Double>> embed(List<String> texts) {
+        batchSize.record(texts.size());
+        return timer.record(() -> delegate.embed(texts));
+    }
+
+    @Override
+    public EmbeddingResponse embedForResponse(List<String> texts) {
+        batchSize.record(texts.size());
+        return timer.record(() -> delegate.embedForResponse(texts));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+}
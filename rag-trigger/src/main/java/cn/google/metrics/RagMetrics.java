@@ -0,0 +1,288 @@
+package cn.google.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * RAG链路指标采集
+ * <p>
+ * 统一封装检索、提示词组装、流式生成、文档入库各阶段的计时器、计数器和直方图，
+ * 所有指标都带有 provider / model / ragTag 标签，经 /actuator/prometheus 导出。
+ * 同时为每次请求创建 Observation，接入链路追踪后即为一个 span。
+ * <p>
+ * model 与 ragTag 来自请求参数，为避免时间序列数量失控，只有登记在 rag.metrics.models / rag.metrics.rag-tags 中的取值原样作为标签，
+ * 其余归入 other；Observation 中的 ragTag 为高基数键值，只写入 span，不产生指标。
+ *
+ */
+@Component
+public class RagMetrics {
+
+    public static final String TAG_PROVIDER = "provider";
+    public static final String TAG_MODEL = "model";
+    public static final String TAG_RAG_TAG = "ragTag";
+    public static final String NONE = "none";
+    public static final String OTHER = "other";
+
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+
+    /** 作为 model 标签原样输出的模型 */
+    @Value("${rag.metrics.models:}")
+    private Set<String> models = Set.of();
+    /** 作为 ragTag 标签原样输出的知识库 */
+    @Value("${rag.metrics.rag-tags:}")
+    private Set<String> ragTags = Set.of();
+
+    public RagMetrics(MeterRegistry meterRegistry, ObservationRegistry observationRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    /**
+     * 检索阶段计时（包含查询向量化 + 相似度检索）
+     */
+    public <T> T timeRetrieval(String provider, String model, String ragTag, Supplier<T> supplier) {
+        return timer("rag.retrieval", "向量检索耗时", provider, model, ragTag).record(supplier);
+    }
+
+    /**
+     * 提示词组装阶段计时
+     */
+    public <T> T timePromptAssembly(String provider, String model, String ragTag, Supplier<T> supplier) {
+        return timer("rag.prompt.assembly", "提示词组装耗时", provider, model, ragTag).record(supplier);
+    }
+
+    /**
+     * 同步生成计时
+     */
+    public <T> T timeCall(String provider, String model, Supplier<T> supplier) {
+        return timer("rag.generation.call", "同步生成耗时", provider, model, null).record(supplier);
+    }
+
+    /**
+     * 入库阶段计时，stage 取值 parse / split / store
+     */
+    public <T> T timeIngest(String stage, String ragTag, Supplier<T> supplier) {
+        return Timer.builder("rag.ingest." + stage)
+                .description("知识库入库阶段耗时")
+                .tag(TAG_RAG_TAG, ragTagValue(ragTag))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(supplier);
+    }
+
+    /**
+     * 记录文件使用的解析方式，reader 取值 text / tika / cache
+     */
+    public void recordParse(String ragTag, String reader) {
+        Counter.builder("rag.ingest.parse.reader")
+                .description("按解析方式统计的入库文件数")
+                .tag(TAG_RAG_TAG, ragTagValue(ragTag))
+                .tag("reader", reader)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 记录切换嵌入模型时重新向量化并写入影子表的片段数，速率即迁移吞吐
+     */
+    public void recordMigratedRows(String ragTag, long rows) {
+        Counter.builder("rag.migration.rows")
+                .description("嵌入模型迁移重新向量化的片段数")
+                .tag(TAG_RAG_TAG, ragTagValue(ragTag))
+                .register(meterRegistry)
+                .increment(rows);
+    }
+
+    /**
+     * 记录一个文件的入库结果
+     */
+    public void recordIngestedFile(String ragTag, long bytes, int chunks, boolean success) {
+        Counter.builder("rag.ingest.files")
+                .description("入库文件数")
+                .tag(TAG_RAG_TAG, ragTagValue(ragTag))
+                .tag("outcome", success ? "success" : "failure")
+                .register(meterRegistry)
+                .increment();
+        if (!success) return;
+        Counter.builder("rag.ingest.chunks")
+                .description("入库文档片段数")
+                .tag(TAG_RAG_TAG, ragTagValue(ragTag))
+                .register(meterRegistry)
+                .increment(chunks);
+        DistributionSummary.builder("rag.ingest.bytes")
+                .description("入库文件大小")
+                .baseUnit("bytes")
+                .tag(TAG_RAG_TAG, ragTagValue(ragTag))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
+    /**
+     * 为流式回复挂载指标：首 token 延迟（TTFT）、总耗时、输出 token 数、每秒 token 数（TPS），
+     * 并在订阅期间开启一个 Observation（span）。
+     * <p>
+     * 以 Flux 信号为准计时：首个非空内容到达时记录 TTFT，流结束、出错或被取消时记录其余指标。
+     * 每个非空 ChatResponse 片段按一个 token 计。
+     */
+    public Flux<ChatResponse> observeStream(String endpoint, String provider, String model, String ragTag, Flux<ChatResponse> flux) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicLong firstTokenAt = new AtomicLong();
+            AtomicLong tokens = new AtomicLong();
+
+            Observation observation = Observation.createNotStarted("rag." + endpoint, observationRegistry)
+                    .lowCardinalityKeyValue(TAG_PROVIDER, provider)
+                    .lowCardinalityKeyValue(TAG_MODEL, modelValue(model))
+                    .highCardinalityKeyValue(TAG_RAG_TAG, tagValue(ragTag))
+                    .start();
+
+            return flux
+                    .doOnNext(response -> {
+                        if (!hasContent(response)) return;
+                        tokens.incrementAndGet();
+                        if (firstTokenAt.compareAndSet(0, System.nanoTime())) {
+                            timer("rag.generation.ttft", "首 token 延迟", provider, model, ragTag)
+                                    .record(firstTokenAt.get() - start, TimeUnit.NANOSECONDS);
+                            observation.event(Observation.Event.of("first-token"));
+                        }
+                    })
+                    .doOnError(observation::error)
+                    .doFinally(signal -> {
+                        long end = System.nanoTime();
+                        Timer.builder("rag.generation.duration")
+                                .description("流式生成总耗时")
+                                .tags(TAG_PROVIDER, provider, TAG_MODEL, modelValue(model), TAG_RAG_TAG, ragTagValue(ragTag))
+                                .tag("outcome", outcome(signal))
+                                .publishPercentileHistogram()
+                                .register(meterRegistry)
+                                .record(end - start, TimeUnit.NANOSECONDS);
+
+                        DistributionSummary.builder("rag.generation.tokens")
+                                .description("单次生成输出 token 数")
+                                .tags(TAG_PROVIDER, provider, TAG_MODEL, modelValue(model), TAG_RAG_TAG, ragTagValue(ragTag))
+                                .publishPercentileHistogram()
+                                .register(meterRegistry)
+                                .record(tokens.get());
+
+                        long first = firstTokenAt.get();
+                        if (first > 0 && end > first && tokens.get() > 1) {
+                            double seconds = (end - first) / 1_000_000_000d;
+                            DistributionSummary.builder("rag.generation.tps")
+                                    .description("首 token 之后的生成速率（token/s）")
+                                    .tags(TAG_PROVIDER, provider, TAG_MODEL, modelValue(model), TAG_RAG_TAG, ragTagValue(ragTag))
+                                    .publishPercentileHistogram()
+                                    .register(meterRegistry)
+                                    .record((tokens.get() - 1) / seconds);
+                        }
+                        observation.stop();
+                    });
+        });
+    }
+
+    /**
+     * 记录一次被终止的流式生成
+     *
+     * @param reason       终止原因：client（客户端断开）/ batch（批量问答被整批取消）/ first-token（首个片段超时）/ idle（空闲超时）/ deadline（超过最长生成时间）
+     * @param started      终止前是否已输出内容
+     * @param wastedTokens 已生成但回复被丢弃的 token 数
+     */
+    public void recordCancelled(String endpoint, String provider, String model, String reason, boolean started, long wastedTokens) {
+        Counter.builder("rag.generation.cancelled")
+                .description("被终止的流式生成次数")
+                .tags("endpoint", endpoint, TAG_PROVIDER, provider, TAG_MODEL, modelValue(model), "reason", reason)
+                .tag("stage", started ? "streaming" : "before-first-token")
+                .register(meterRegistry)
+                .increment();
+        if (wastedTokens <= 0) return;
+        Counter.builder("rag.generation.tokens.wasted")
+                .description("已生成但回复被丢弃的 token 数")
+                .tags("endpoint", endpoint, TAG_PROVIDER, provider, TAG_MODEL, modelValue(model), "reason", reason)
+                .register(meterRegistry)
+                .increment(wastedTokens);
+    }
+
+    /**
+     * 记录一次流式响应的写出量：字节数与刷新（事件）次数
+     */
+    public void recordStreamWire(String endpoint, String provider, String format, long bytes, long flushes) {
+        DistributionSummary.builder("rag.stream.bytes")
+                .description("单次流式响应写出字节数")
+                .baseUnit("bytes")
+                .tags("endpoint", endpoint, TAG_PROVIDER, provider, "format", format)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(bytes);
+        DistributionSummary.builder("rag.stream.flushes")
+                .description("单次流式响应刷新次数")
+                .tags("endpoint", endpoint, TAG_PROVIDER, provider, "format", format)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(flushes);
+    }
+
+    private Timer timer(String name, String description, String provider, String model, String ragTag) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(TAG_PROVIDER, provider, TAG_MODEL, modelValue(model), TAG_RAG_TAG, ragTagValue(ragTag))
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * 片段是否带有非空内容，按一个 token 计
+     */
+    public static boolean hasContent(ChatResponse response) {
+        return response != null
+                && response.getResult() != null
+                && response.getResult().getOutput() != null
+                && response.getResult().getOutput().getContent() != null
+                && !response.getResult().getOutput().getContent().isEmpty();
+    }
+
+    private static String outcome(SignalType signal) {
+        return switch (signal) {
+            case ON_COMPLETE -> "success";
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> signal.name().toLowerCase();
+        };
+    }
+
+    private static String tagValue(String value) {
+        return value == null || value.isEmpty() ? NONE : value;
+    }
+
+    /**
+     * model 标签取值：未登记的模型归入 other
+     */
+    private String modelValue(String model) {
+        if (model == null || model.isEmpty()) return NONE;
+        return models.contains(model) ? model : OTHER;
+    }
+
+    private String ragTagValue(String ragTag) {
+        if (ragTag == null || ragTag.isEmpty()) return NONE;
+        return ragTags.contains(ragTag) ? ragTag : OTHER;
+    }
+
+}
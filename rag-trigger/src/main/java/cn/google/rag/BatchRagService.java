@@ -0,0 +1,328 @@
+package cn.google.rag;
+
+import cn.google.metrics.RagMetrics;
+import cn.google.request.BatchRagRequest;
+import cn.google.request.RagFilter;
+import cn.google.response.BatchRagResult;
+import cn.google.stream.GenerationGuard;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 批量知识库问答
+ * <p>
+ * 评测、FAQ 预生成等场景一次提交大量问题，逐个调用 generate_stream_rag 时每个问题单独向量化、单独检索、串行生成。
+ * 这里按批处理：
+ * <ol>
+ *     <li>问题按 rag.batch.batch-size 分批，每批整体向量化：OpenAI 为一次批量请求，Ollama 由 {@link ParallelEmbeddingClient} 并发逐条请求</li>
+ *     <li>每批一条多查询 SQL（unnest + LATERAL）在读库完成检索，每个问题在各自知识库内取 topK</li>
+ *     <li>检索先行于生成：前一批检索完成即开始生成，后续批次的检索与生成重叠</li>
+ *     <li>生成并发受 rag.batch.concurrency 限制，保持模型持续满载而不过载</li>
+ * </ol>
+ * 结果按完成顺序逐条输出，每条带有分阶段耗时；单个问题失败只影响该条结果。
+ * <p>
+ * PgVectorStore 只接受查询文本、每次调用都重新向量化，批量检索因此直接执行 SQL，距离与 PgVectorStore 一致（余弦距离 &lt;=&gt;）。
+ *
+ */
+@Slf4j
+@Component
+public class BatchRagService {
+
+    public static final String ENDPOINT = "batch_rag";
+
+    private static final int DEFAULT_TOP_K = 5;
+    private static final int MAX_TOP_K = 50;
+
+    /**
+     * 每个问题在各自知识库内按余弦距离取 topK；向量以文本传入，在 SQL 中转换为 vector；
+     * 第一个 %s 为向量表，第二个 %s 为附加的元数据过滤条件（jsonpath，可为空）
+     */
+    private static final String SEARCH_SQL = "SELECT q.idx, d.id, d.content, d.metadata FROM unnest(?::int[], ?::text[], ?::text[]) AS q(idx, tag, emb) " +
+            "CROSS JOIN LATERAL (SELECT id::text AS id, content, metadata::text AS metadata, embedding <=> q.emb::vector AS distance FROM %s" +
+            " WHERE metadata->>'knowledge' = q.tag%s ORDER BY distance LIMIT ?) d " +
+            "ORDER BY q.idx, d.distance";
+
+    @Resource
+    private JdbcTemplate readJdbcTemplate;
+    @Resource
+    private EmbeddingClient ragEmbeddingClient;
+    @Resource
+    private EmbeddingClients embeddingClients;
+    @Resource
+    private EmbeddingRoutes embeddingRoutes;
+    @Resource
+    private PreloadableSimpleVectorStore vectorStore;
+    @Resource
+    private RagMetrics ragMetrics;
+    @Resource
+    private GenerationGuard generationGuard;
+
+    @Value("${rag.batch.max-items:1000}")
+    private int maxItems;
+    @Value("${rag.batch.batch-size:32}")
+    private int batchSize;
+    @Value("${rag.batch.retrieval-concurrency:2}")
+    private int retrievalConcurrency;
+    @Value("${rag.batch.concurrency:4}")
+    private int concurrency;
+
+    /**
+     * 待检索的问题
+     *
+     * @param index    在批次中的序号，多查询 SQL 以此对应结果
+     * @param id       问题ID
+     * @param ragTag   知识库标签
+     * @param question 问题
+     */
+    private record Query(int index, String id, String ragTag, String question) {
+    }
+
+    /**
+     * 检索完成、等待生成的问题
+     *
+     * @param query       问题
+     * @param documents   检索到的文档
+     * @param error       所在批次检索失败的原因
+     * @param embedMs     批次向量化耗时
+     * @param retrievalMs 批次检索耗时
+     * @param readyAt     检索完成时刻（System.nanoTime）
+     */
+    private record Retrieved(Query query, List<Document> documents, String error, long embedMs, long retrievalMs, long readyAt) {
+    }
+
+    /**
+     * 执行批量问答
+     *
+     * @param provider  模型提供方
+     * @param model     模型名称
+     * @param request   批量请求
+     * @param generator 以消息列表发起流式生成
+     * @return 按完成顺序输出的结果
+     */
+    public Flux<BatchRagResult> execute(String provider, String model, BatchRagRequest request,
+                                        Function<List<Message>, Flux<ChatResponse>> generator) {
+        List<BatchRagRequest.Item> items = request == null || request.getItems() == null ? List.of() : request.getItems();
+        if (items.isEmpty()) throw new IllegalArgumentException("批量问题为空");
+        if (items.size() > maxItems) throw new IllegalArgumentException("批量问题数 " + items.size() + " 超过上限 " + maxItems);
+        int topK = request.getTopK() == null ? DEFAULT_TOP_K : request.getTopK();
+        if (topK <= 0 || topK > MAX_TOP_K) throw new IllegalArgumentException("topK 取值范围为 1 ~ " + MAX_TOP_K);
+        RagFilter filter = request.getFilter();
+        // 在开始输出之前校验过滤条件（如非法的值），不合法时由控制器转换为 code 0001 的响应
+        MetadataFilter extra = MetadataFilter.none().and(filter);
+
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            List<BatchRagResult> rejected = new ArrayList<>();
+            List<List<Query>> batches = new ArrayList<>();
+            List<Query> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < items.size(); i++) {
+                BatchRagRequest.Item item = items.get(i);
+                String id = item.getId() == null ? String.valueOf(i) : item.getId();
+                if (isBlank(item.getRagTag()) || isBlank(item.getQuestion())) {
+                    rejected.add(BatchRagResult.builder().id(id).ragTag(item.getRagTag()).question(item.getQuestion())
+                            .error("ragTag 与 question 不能为空").build());
+                    continue;
+                }
+                batch.add(new Query(batch.size(), id, item.getRagTag(), item.getQuestion()));
+                if (batch.size() == batchSize) {
+                    batches.add(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) batches.add(batch);
+            log.info("批量问答开始 model={} items={} batches={} concurrency={}", model, items.size(), batches.size(), concurrency);
+
+            return Flux.fromIterable(rejected).concatWith(Flux.fromIterable(batches)
+                    .flatMap(queries -> generationGuard.retrieval(() -> retrieve(provider, model, queries, topK, filter, extra)), retrievalConcurrency)
+                    .flatMapIterable(Function.identity())
+                    .flatMap(retrieved -> generate(provider, model, retrieved, generator, start), concurrency));
+        });
+    }
+
+    /**
+     * 一批问题：整批向量化 + 一条多查询 SQL；失败时整批标记为失败，不中断其余批次。
+     * 切换嵌入模型期间，批内问题按知识库的检索路由分组，每组使用各自的嵌入模型与向量表（见 {@link EmbeddingRoutes}）
+     */
+    private List<Retrieved> retrieve(String provider, String model, List<Query> queries, int topK, RagFilter filter, MetadataFilter extra) {
+        long embedStart = System.nanoTime();
+        try {
+            List<Query> inMemory = new ArrayList<>();
+            Map<EmbeddingRoutes.Route, List<Query>> groups = new LinkedHashMap<>();
+            for (Query query : queries) {
+                if (vectorStore.containsKnowledge(query.ragTag())) {
+                    inMemory.add(query);
+                } else {
+                    groups.computeIfAbsent(embeddingRoutes.route(query.ragTag()), key -> new ArrayList<>()).add(query);
+                }
+            }
+
+            long embedNanos = 0;
+            Map<Integer, List<Document>> documents = new HashMap<>();
+            long searchStart = System.nanoTime();
+            if (!inMemory.isEmpty()) {
+                // 从快照装载进内存的知识库直接在内存中检索
+                long groupStart = System.nanoTime();
+                List<List<Double>> embeddings = ragEmbeddingClient.embed(inMemory.stream().map(Query::question).toList());
+                embedNanos += System.nanoTime() - groupStart;
+                for (int i = 0; i < inMemory.size(); i++) {
+                    Query query = inMemory.get(i);
+                    documents.put(query.index(), vectorStore.similaritySearch(embeddings.get(i),
+                            MetadataFilter.knowledge(query.ragTag()).and(filter).expression(), topK, SearchRequest.SIMILARITY_THRESHOLD_ACCEPT_ALL));
+                }
+            }
+            for (Map.Entry<EmbeddingRoutes.Route, List<Query>> group : groups.entrySet()) {
+                EmbeddingRoutes.Route route = group.getKey();
+                EmbeddingClient embeddingClient = embeddingRoutes.isPrimary(route) ? ragEmbeddingClient : embeddingClients.get(route.model());
+                long groupStart = System.nanoTime();
+                List<List<Double>> embeddings = embeddingClient.embed(group.getValue().stream().map(Query::question).toList());
+                embedNanos += System.nanoTime() - groupStart;
+                documents.putAll(ragMetrics.timeRetrieval(provider, model, null, () -> search(route.table(), group.getValue(), embeddings, topK, extra)));
+            }
+            long readyAt = System.nanoTime();
+
+            List<Retrieved> retrieved = new ArrayList<>(queries.size());
+            for (Query query : queries) {
+                retrieved.add(new Retrieved(query, documents.getOrDefault(query.index(), List.of()), null,
+                        millis(embedNanos), millis(readyAt - searchStart - embedNanos), readyAt));
+            }
+            return retrieved;
+        } catch (RuntimeException e) {
+            log.warn("批量问答检索失败 model={} size={}", model, queries.size(), e);
+            long readyAt = System.nanoTime();
+            return queries.stream()
+                    .map(query -> new Retrieved(query, List.of(), "检索失败: " + e.getMessage(), 0, millis(readyAt - embedStart), readyAt))
+                    .toList();
+        }
+    }
+
+    private Map<Integer, List<Document>> search(String table, List<Query> queries, List<List<Double>> embeddings, int topK, MetadataFilter extra) {
+        Integer[] indexes = new Integer[queries.size()];
+        String[] tags = new String[queries.size()];
+        String[] vectors = new String[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            indexes[i] = queries.get(i).index();
+            tags[i] = queries.get(i).ragTag();
+            vectors[i] = formatVector(embeddings.get(i));
+        }
+
+        Map<Integer, List<Document>> documents = new HashMap<>();
+        readJdbcTemplate.query(con -> {
+            String filterSql = extra.isEmpty() ? "" : " AND metadata::jsonb @@ '" + extra.pgVectorJsonPath() + "'::jsonpath";
+            PreparedStatement ps = con.prepareStatement(String.format(SEARCH_SQL, table, filterSql));
+            ps.setArray(1, con.createArrayOf("int4", indexes));
+            ps.setArray(2, con.createArrayOf("text", tags));
+            ps.setArray(3, con.createArrayOf("text", vectors));
+            ps.setInt(4, topK);
+            return ps;
+        }, rs -> {
+            documents.computeIfAbsent(rs.getInt("idx"), key -> new ArrayList<>())
+                    .add(new Document(rs.getString("id"), rs.getString("content"), ReadOnlyPgVectorStore.parseMetadata(rs.getString("metadata"))));
+        });
+        return documents;
+    }
+
+    /**
+     * 生成单个问题的回答，收集完整回复后输出一条结果；失败与超时转为该条结果的 error
+     */
+    private Mono<BatchRagResult> generate(String provider, String model, Retrieved retrieved,
+                                          Function<List<Message>, Flux<ChatResponse>> generator, long start) {
+        return Mono.defer(() -> {
+            long begin = System.nanoTime();
+            Query query = retrieved.query();
+            if (retrieved.error() != null) {
+                return Mono.just(result(retrieved, begin, start).error(retrieved.error()).build());
+            }
+
+            List<Message> messages = RagPromptAssembler.assemble(query.question(), retrieved.documents());
+            StringBuilder answer = new StringBuilder();
+            AtomicLong tokens = new AtomicLong();
+            AtomicLong firstTokenAt = new AtomicLong();
+
+            return generationGuard.guard(ENDPOINT, provider, model, GenerationGuard.REASON_BATCH,
+                            ragMetrics.observeStream(ENDPOINT, provider, model, query.ragTag(), generator.apply(messages)))
+                    .doOnNext(response -> {
+                        if (!RagMetrics.hasContent(response)) return;
+                        firstTokenAt.compareAndSet(0, System.nanoTime());
+                        tokens.incrementAndGet();
+                        answer.append(response.getResult().getOutput().getContent());
+                    })
+                    .then(Mono.fromSupplier(() -> {
+                        long end = System.nanoTime();
+                        long first = firstTokenAt.get();
+                        return result(retrieved, begin, start)
+                                .answer(answer.toString())
+                                .tokens(tokens.get())
+                                .ttftMs(first == 0 ? 0 : millis(first - begin))
+                                .generationMs(millis(end - begin))
+                                .build();
+                    }))
+                    .onErrorResume(e -> {
+                        log.warn("批量问答生成失败 model={} id={}", model, query.id(), e);
+                        String reason = e instanceof TimeoutException ? "生成超时" : "生成失败: " + e.getMessage();
+                        return Mono.just(result(retrieved, begin, start).tokens(tokens.get()).error(reason).build());
+                    });
+        });
+    }
+
+    private static BatchRagResult.BatchRagResultBuilder result(Retrieved retrieved, long begin, long start) {
+        Query query = retrieved.query();
+        return BatchRagResult.builder()
+                .id(query.id())
+                .ragTag(query.ragTag())
+                .question(query.question())
+                .documents(retrieved.documents().size())
+                .sources(retrieved.documents().stream()
+                        .map(document -> document.getMetadata().get(ChunkUpserter.METADATA_SOURCE))
+                        .filter(Objects::nonNull)
+                        .map(Object::toString)
+                        .distinct()
+                        .toList())
+                .embedMs(retrieved.embedMs())
+                .retrievalMs(retrieved.retrievalMs())
+                .queueMs(millis(begin - retrieved.readyAt()))
+                .elapsedMs(millis(System.nanoTime() - start));
+    }
+
+    /**
+     * 格式化为 pgvector 文本格式 [v1,v2,...]
+     */
+    static String formatVector(List<Double> vector) {
+        StringBuilder sb = new StringBuilder(vector.size() * 10 + 2).append('[');
+        for (int i = 0; i < vector.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append(vector.get(i).floatValue());
+        }
+        return sb.append(']').toString();
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(0, nanos));
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+}
@@ -0,0 +1,302 @@
+package cn.google.rag;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.PgVectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 按内容哈希幂等写入文档片段
+ * <p>
+ * 片段ID由（知识库标签, 来源路径, 片段内容 SHA-256）确定性生成，同一内容重复上传得到相同ID：
+ * <ul>
+ *     <li>库中已存在的片段直接跳过，不再重复向量化</li>
+ *     <li>新片段通过 PgVectorStore 的 INSERT ... ON CONFLICT (id) 写入</li>
+ *     <li>同一来源下不再出现的旧片段（文件被修改）被删除</li>
+ * </ul>
+ * 表和索引的规模因此只与去重后的内容量成正比。
+ * <p>
+ * 每个片段的元数据记录来源信息（见 {@link Origin}），可通过 {@link MetadataFilter} 按这些字段过滤检索；
+ * 内容未变化而跳过的片段也会更新为本次的来源信息。
+ *
+ */
+@Slf4j
+@Component
+public class ChunkUpserter {
+
+    /** 片段元数据：知识库标签 */
+    public static final String METADATA_KNOWLEDGE = "knowledge";
+    /** 片段元数据：来源路径，与 TikaDocumentReader 写入的键一致 */
+    public static final String METADATA_SOURCE = "source";
+    /** 片段元数据：文件类型，取来源路径的小写扩展名，无扩展名时为文件名 */
+    public static final String METADATA_FILE_TYPE = "file_type";
+    /** 片段元数据：Git 仓库提交ID，上传文件没有该字段 */
+    public static final String METADATA_REPO_COMMIT = "repo_commit";
+    /** 片段元数据：上传时间（毫秒时间戳） */
+    public static final String METADATA_INGESTED_AT = "ingested_at";
+
+    private static final String TABLE = PgVectorStore.VECTOR_TABLE_NAME;
+    /**
+     * 在 SQL 中计算与 {@link #chunkId} 相同的内容哈希ID（name-based UUID，即 md5 后设置版本与变体位），v 为向量表别名
+     */
+    private static final String EXPECTED_ID = "(SELECT overlay(overlay(h placing '3' from 13 for 1)" +
+            " placing substr('89ab', (('x' || substr(h, 17, 1))::bit(4)::int & 3) + 1, 1) from 17 for 1)::uuid" +
+            " FROM md5(convert_to(coalesce(v.metadata->>'knowledge', ''), 'UTF8') || '\\x00'::bytea" +
+            " || convert_to(coalesce(v.metadata->>'source', ''), 'UTF8') || '\\x00'::bytea" +
+            " || convert_to(encode(sha256(convert_to(coalesce(v.content, ''), 'UTF8')), 'hex'), 'UTF8')) AS h)";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Resource
+    private PgVectorStore pgVectorStore;
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private EmbeddingMigration embeddingMigration;
+    @Resource
+    private EmbeddingRoutes embeddingRoutes;
+    @Resource
+    private EmbeddingClients embeddingClients;
+
+    /**
+     * 写入结果
+     *
+     * @param inserted 新写入的片段数
+     * @param skipped  内容未变化而跳过的片段数
+     * @param removed  删除的旧片段数
+     */
+    public record Result(int inserted, int skipped, int removed) {
+    }
+
+    /**
+     * 来源信息
+     *
+     * @param source     来源路径（上传文件名或仓库内相对路径）
+     * @param repoCommit Git 仓库提交ID，上传文件为 null
+     * @param ingestedAt 上传时间（毫秒时间戳）
+     */
+    public record Origin(String source, String repoCommit, long ingestedAt) {
+    }
+
+    /**
+     * 修复结果
+     *
+     * @param deleted 删除的重复行数
+     * @param rekeyed 改写为内容哈希ID的行数
+     */
+    public record RepairResult(long deleted, long rekeyed) {
+    }
+
+    /**
+     * 建立元数据索引：
+     * 1. 按（知识库标签, 来源）查询已有片段的表达式索引，避免每次入库全表扫描 JSONB
+     * 2. 元数据的 GIN（jsonb_path_ops）索引，PgVectorStore 的过滤条件 metadata::jsonb @@ jsonpath 可以走该索引
+     */
+    @PostConstruct
+    public void createIndexes() {
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + TABLE + "_knowledge_source_idx ON " + TABLE +
+                " ((metadata->>'knowledge'), (metadata->>'source'))");
+
+        // 索引表达式需与查询中的 metadata::jsonb 一致：json 列建在转换后的表达式上，jsonb 列的转换会被消去
+        String type = jdbcTemplate.queryForObject(
+                "SELECT format_type(atttypid, atttypmod) FROM pg_attribute WHERE attrelid = to_regclass(?) AND attname = 'metadata'",
+                String.class, TABLE);
+        String column = "jsonb".equals(type) ? "metadata" : "(metadata::jsonb)";
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + TABLE + "_metadata_gin_idx ON " + TABLE +
+                " USING gin (" + column + " jsonb_path_ops)");
+    }
+
+    /**
+     * 以来源为单位幂等写入片段
+     *
+     * @param ragTag 知识库标签
+     * @param origin 来源信息
+     * @param chunks 分割后的片段
+     * @return 写入结果
+     */
+    public Result upsert(String ragTag, Origin origin, List<Document> chunks) {
+        String source = origin.source();
+        Map<String, Object> provenance = provenance(origin);
+
+        // 生成确定性ID，同一文件内内容重复的片段只保留一份
+        Map<String, Document> byId = new LinkedHashMap<>();
+        for (Document chunk : chunks) {
+            Map<String, Object> metadata = new HashMap<>(chunk.getMetadata());
+            metadata.put(METADATA_KNOWLEDGE, ragTag);
+            metadata.putAll(provenance);
+            String id = chunkId(ragTag, source, chunk.getContent());
+            byId.putIfAbsent(id, new Document(id, chunk.getContent(), metadata));
+        }
+
+        Set<String> existing = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id::text FROM " + TABLE + " WHERE metadata->>'knowledge' = ? AND metadata->>'source' = ?",
+                String.class, ragTag, source));
+
+        List<Document> toInsert = new ArrayList<>();
+        for (Map.Entry<String, Document> entry : byId.entrySet()) {
+            if (!existing.contains(entry.getKey())) toInsert.add(entry.getValue());
+        }
+        if (!toInsert.isEmpty()) {
+            add(ragTag, toInsert);
+        }
+
+        List<String> stale = new ArrayList<>();
+        for (String id : existing) {
+            if (!byId.containsKey(id)) stale.add(id);
+        }
+        if (!stale.isEmpty()) {
+            pgVectorStore.delete(stale);
+        }
+
+        int skipped = byId.size() - toInsert.size();
+        if (skipped > 0) {
+            // 内容未变化的片段不重新向量化，只合并本次的来源信息
+            jdbcTemplate.update("UPDATE " + TABLE + " SET metadata = metadata::jsonb || ?::jsonb" +
+                            " WHERE metadata->>'knowledge' = ? AND metadata->>'source' = ?",
+                    toJson(provenance), ragTag, source);
+        }
+
+        embeddingMigration.mirror(ragTag, source);
+        return new Result(toInsert.size(), skipped, stale.size());
+    }
+
+    /**
+     * 写入新片段。嵌入模型迁移收尾后、本节点以新配置重启前，主向量表的路由指向新模型：
+     * 此时按路由的模型向量化，而不是按本节点配置的旧模型（维度与主向量表不一致）
+     */
+    private void add(String ragTag, List<Document> documents) {
+        EmbeddingRoutes.Route route = embeddingRoutes.route(ragTag);
+        if (!TABLE.equals(route.table()) || embeddingRoutes.isPrimary(route)) {
+            pgVectorStore.add(documents);
+            return;
+        }
+        List<List<Double>> embeddings = embeddingClients.get(route.model()).embed(documents.stream().map(Document::getContent).toList());
+        List<Object[]> args = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            args.add(new Object[]{document.getId(), document.getContent(), toJson(document.getMetadata()), BatchRagService.formatVector(embeddings.get(i))});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO " + TABLE + " (id, content, metadata, embedding) VALUES (?::uuid, ?, ?::jsonb, ?::vector) " +
+                "ON CONFLICT (id) DO UPDATE SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding", args);
+    }
+
+    /**
+     * 修复历史数据：
+     * 1. 历史随机ID行按（知识库标签, 内容）去重，不区分来源：来源由 Tika 的文件名改为仓库内相对路径后，
+     *    同一片段的新旧两行来源不同；每组优先保留已是内容哈希ID的行
+     * 2. 将剩余行的随机ID改写为内容哈希ID，之后的重复上传即可命中去重；按批执行集合操作，每批一条 DELETE 与一条 UPDATE
+     *
+     * @param ragTag 知识库标签，为空时处理全表
+     * @param batchSize 改写ID时每批处理的行数
+     * @return 修复结果
+     */
+    public RepairResult repair(String ragTag, int batchSize) {
+        String tagCondition = ragTag == null ? "" : " WHERE v.metadata->>'knowledge' = ?";
+        Object[] tagArgs = ragTag == null ? new Object[0] : new Object[]{ragTag};
+
+        long deleted = jdbcTemplate.update(
+                "DELETE FROM " + TABLE + " t USING (" +
+                        "SELECT id, current, row_number() OVER (PARTITION BY knowledge, hash ORDER BY current DESC, id) AS rn FROM (" +
+                        "SELECT v.id, v.metadata->>'knowledge' AS knowledge, md5(v.content) AS hash, v.id = " + EXPECTED_ID + " AS current " +
+                        "FROM " + TABLE + " v" + tagCondition + ") x) d " +
+                        "WHERE t.id = d.id AND d.rn > 1 AND NOT d.current",
+                tagArgs);
+
+        long rekeyed = 0;
+        String lastId = "00000000-0000-0000-0000-000000000000";
+        while (true) {
+            List<Object> args = new ArrayList<>();
+            args.add(lastId);
+            if (ragTag != null) args.add(ragTag);
+            args.add(batchSize);
+            List<String> ids = jdbcTemplate.queryForList(
+                    "SELECT id::text FROM " + TABLE + " WHERE id > ?::uuid" + (ragTag == null ? "" : " AND metadata->>'knowledge' = ?") +
+                            " ORDER BY id LIMIT ?",
+                    String.class, args.toArray());
+            if (ids.isEmpty()) break;
+
+            String page = "{" + String.join(",", ids) + "}";
+            // 目标ID已存在说明是同内容的重复行（第一步未命中的情况），直接删除
+            deleted += jdbcTemplate.update(
+                    "DELETE FROM " + TABLE + " v USING " + TABLE + " c WHERE v.id = ANY(?::uuid[]) AND c.id = " + EXPECTED_ID + " AND c.id <> v.id",
+                    page);
+            // 改写后的ID可能落在后续批次的范围内，届时已与目标ID一致，不会重复处理
+            rekeyed += jdbcTemplate.update(
+                    "UPDATE " + TABLE + " v SET id = " + EXPECTED_ID + " WHERE v.id = ANY(?::uuid[]) AND v.id <> " + EXPECTED_ID,
+                    page);
+            lastId = ids.get(ids.size() - 1);
+        }
+
+        embeddingMigration.mirror(ragTag, null);
+        log.info("向量表修复完成 ragTag={} deleted={} rekeyed={}", ragTag, deleted, rekeyed);
+        return new RepairResult(deleted, rekeyed);
+    }
+
+    /**
+     * 来源信息对应的元数据
+     */
+    static Map<String, Object> provenance(Origin origin) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put(METADATA_SOURCE, origin.source());
+        metadata.put(METADATA_FILE_TYPE, fileType(origin.source()));
+        if (origin.repoCommit() != null && !origin.repoCommit().isEmpty()) {
+            metadata.put(METADATA_REPO_COMMIT, origin.repoCommit());
+        }
+        metadata.put(METADATA_INGESTED_AT, origin.ingestedAt());
+        return metadata;
+    }
+
+    /**
+     * 文件类型：小写扩展名，无扩展名时为小写文件名（如 dockerfile）
+     */
+    public static String fileType(String source) {
+        if (source == null || source.isEmpty()) return "";
+        String name = source.substring(Math.max(source.lastIndexOf('/'), source.lastIndexOf('\\')) + 1).toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        return dot < 0 || dot == name.length() - 1 ? name : name.substring(dot + 1);
+    }
+
+    private static String toJson(Map<String, Object> metadata) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(metadata);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 片段确定性ID：基于（知识库标签, 来源, 内容 SHA-256）的 name-based UUID
+     */
+    public static String chunkId(String ragTag, String source, String content) {
+        String key = (ragTag == null ? "" : ragTag) + '\u0000' + (source == null ? "" : source) + '\u0000' + sha256(content);
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static String sha256(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest((content == null ? "" : content).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package cn.google.rag;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucket;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多轮对话会话存储
+ * <p>
+ * 按（会话ID, 知识库标签）保存两部分内容，所有节点共享：
+ * <ul>
+ *     <li>固定上下文：首轮检索到的文档，之后每轮原样复用，保证提示词前缀不变</li>
+ *     <li>历史对话：每轮实际发送给模型的用户消息与模型回复，下一轮的提示词即为上一轮提示词加回复的延续</li>
+ * </ul>
+ * 固定上下文以 JSON 数组保存；历史为 Redis List，追加与裁剪在同一个 Lua 脚本中原子完成，
+ * 超过上限时一次裁掉较早的一半，减少前缀被破坏的次数。
+ *
+ */
+@Slf4j
+@Component
+public class ConversationStore {
+
+    private static final String KEY_PREFIX = "conversation:";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * 追加一轮对话并在超过上限时裁剪，同时刷新历史与上下文的过期时间
+     * KEYS[1] 历史，KEYS[2] 上下文；ARGV：用户消息、回复、最大条数、保留条数、过期毫秒数
+     */
+    private static final String APPEND_SCRIPT = String.join("\n",
+            "redis.call('RPUSH', KEYS[1], ARGV[1], ARGV[2])",
+            "local size = redis.call('LLEN', KEYS[1])",
+            "if size > tonumber(ARGV[3]) then redis.call('LTRIM', KEYS[1], size - tonumber(ARGV[4]), -1) end",
+            "redis.call('PEXPIRE', KEYS[1], ARGV[5])",
+            "redis.call('PEXPIRE', KEYS[2], ARGV[5])",
+            "return size");
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Value("${rag.session.max-turns:10}")
+    private int maxTurns;
+    @Value("${rag.session.ttl-minutes:120}")
+    private long ttlMinutes;
+
+    /**
+     * 会话内容
+     *
+     * @param context 固定上下文，首轮之前为空
+     * @param history 历史对话，用户 / 助手消息交替
+     */
+    public record Session(List<String> context, List<Message> history) {
+    }
+
+    /**
+     * 读取会话
+     */
+    public Session load(String conversationId, String ragTag) {
+        String context = contextBucket(conversationId, ragTag).get();
+        List<String> entries = redissonClient.<String>getList(historyKey(conversationId, ragTag), StringCodec.INSTANCE).readAll();
+        List<Message> history = new ArrayList<>(entries.size());
+        for (int i = 0; i + 1 < entries.size(); i += 2) {
+            history.add(new UserMessage(entries.get(i)));
+            history.add(new AssistantMessage(entries.get(i + 1)));
+        }
+        return new Session(context == null ? List.of() : decodeContext(context), history);
+    }
+
+    /**
+     * 固定会话上下文，已固定时返回已有上下文（多个节点并发处理首轮时以先写入者为准）
+     */
+    public List<String> pinContext(String conversationId, String ragTag, List<String> context) {
+        if (context.isEmpty()) return context;
+        RBucket<String> bucket = contextBucket(conversationId, ragTag);
+        if (bucket.setIfAbsent(encodeContext(context), Duration.ofMinutes(ttlMinutes))) {
+            return context;
+        }
+        String existing = bucket.get();
+        return existing == null ? context : decodeContext(existing);
+    }
+
+    /**
+     * 追加一轮对话，异步写入，可在响应式线程中调用
+     *
+     * @param userMessage 本轮实际发送给模型的用户消息
+     * @param answer      模型回复
+     */
+    public void append(String conversationId, String ragTag, String userMessage, String answer) {
+        // 超过上限时只保留较新的一半
+        int keep = Math.max(1, maxTurns / 2) * 2;
+        List<Object> keys = List.of(historyKey(conversationId, ragTag), contextKey(conversationId, ragTag));
+        redissonClient.getScript(StringCodec.INSTANCE).evalAsync(RScript.Mode.READ_WRITE, APPEND_SCRIPT, RScript.ReturnType.INTEGER, keys,
+                userMessage, answer, String.valueOf(maxTurns * 2), String.valueOf(keep),
+                String.valueOf(Duration.ofMinutes(ttlMinutes).toMillis())).exceptionally(e -> {
+            log.warn("保存会话历史失败 conversationId={}", conversationId, e);
+            return null;
+        });
+    }
+
+    private static String encodeContext(List<String> context) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(context);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<String> decodeContext(String value) {
+        try {
+            return OBJECT_MAPPER.readValue(value, new TypeReference<List<String>>() {
+            });
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private RBucket<String> contextBucket(String conversationId, String ragTag) {
+        return redissonClient.getBucket(contextKey(conversationId, ragTag), StringCodec.INSTANCE);
+    }
+
+    private static String contextKey(String conversationId, String ragTag) {
+        return KEY_PREFIX + conversationId + ":" + ragTag + ":context";
+    }
+
+    private static String historyKey(String conversationId, String ragTag) {
+        return KEY_PREFIX + conversationId + ":" + ragTag + ":history";
+    }
+
+}
@@ -0,0 +1,74 @@
+package cn.google.rag;
+
+import cn.google.metrics.RagMetrics;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 单文件入库流程
+ * <p>
+ * 解析（按格式选择解析方式，见 {@link DocumentReaderRegistry}）→ 分割 → 打知识库标签 → 按内容哈希幂等写入 PostgreSQL，并记录指标与标签统计。
+ * 文件上传、Git 仓库分析以及入库队列的工作线程共用此流程。
+ *
+ */
+@Slf4j
+@Component
+public class DocumentIngestor {
+
+    @Resource
+    private TokenTextSplitter tokenTextSplitter;
+    @Resource
+    private ChunkUpserter chunkUpserter;
+    @Resource
+    private RagMetrics ragMetrics;
+    @Resource
+    private RagTagRegistry ragTagRegistry;
+    @Resource
+    private DocumentReaderRegistry documentReaderRegistry;
+
+    /**
+     * 将一个文件写入知识库
+     *
+     * @param ragTag  知识库标签
+     * @param origin  来源信息，其中来源路径与片段内容共同决定片段ID
+     * @param content 文件内容
+     * @return 新写入的文档片段数
+     */
+    public int ingest(String ragTag, ChunkUpserter.Origin origin, byte[] content) {
+        String source = origin.source();
+        long bytes = content.length;
+        try {
+            // 文本与源码直接解码，其余格式（如PDF、Word）使用Tika解析并缓存解析结果
+            DocumentReaderRegistry.Parsed parsed = ragMetrics.timeIngest("parse", ragTag, () -> documentReaderRegistry.read(source, content));
+            ragMetrics.recordParse(ragTag, parsed.reader());
+            List<Document> documents = parsed.documents();
+
+            // 使用文本分割器将文档分割成片段
+            List<Document> documentSplitterList = ragMetrics.timeIngest("split", ragTag, () -> tokenTextSplitter.apply(documents));
+
+            // 为片段生成内容哈希ID、添加知识库标签与来源信息，幂等写入向量数据库并清理该来源的旧片段
+            ChunkUpserter.Result result = ragMetrics.timeIngest("store", ragTag, () -> chunkUpserter.upsert(ragTag, origin, documentSplitterList));
+            if (result.skipped() > 0 || result.removed() > 0) {
+                log.info("入库去重 ragTag={} source={} inserted={} skipped={} removed={}", ragTag, source, result.inserted(), result.skipped(), result.removed());
+            }
+
+            ragMetrics.recordIngestedFile(ragTag, bytes, result.inserted(), true);
+            // 只统计实际发生的变化：内容未变的重复上传不计入；文档数与字节数只在该来源首次入库时累加
+            if (result.inserted() > 0 || result.removed() > 0) {
+                boolean newSource = result.skipped() == 0 && result.removed() == 0;
+                ragTagRegistry.recordIngestion(ragTag, newSource ? documents.size() : 0,
+                        result.inserted() - result.removed(), newSource ? bytes : 0);
+            }
+            return result.inserted();
+        } catch (RuntimeException e) {
+            ragMetrics.recordIngestedFile(ragTag, bytes, 0, false);
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package cn.google.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按文件格式选择解析方式
+ * <ul>
+ *     <li>文本与源码（.java / .md / .txt / .yml 等）：直接以 UTF-8 解码，不经过 Tika 的类型探测与解析器查找；
+ *     含 NUL 字节或不是合法 UTF-8（如 GBK 文本）时回退到 Tika</li>
+ *     <li>其余格式（PDF / Office / HTML 等）：交给 Tika，解析出的文本按文件内容哈希写入 {@link ParseCache}，
+ *     内容未变化的文件再次入库时跳过解析</li>
+ * </ul>
+ * 两种方式产出的文档都带有 source 元数据（文件名），与 TikaDocumentReader 保持一致。
+ *
+ */
+public class DocumentReaderRegistry {
+
+    public static final String READER_TEXT = "text";
+    public static final String READER_TIKA = "tika";
+    public static final String READER_CACHE = "cache";
+
+    /** 按纯文本解码的扩展名 */
+    private static final Set<String> TEXT_EXTENSIONS = Set.of(
+            "txt", "text", "md", "markdown", "rst", "adoc", "log", "csv", "tsv",
+            "java", "kt", "kts", "scala", "groovy", "gradle", "py", "rb", "php", "go", "rs", "swift",
+            "c", "h", "cc", "cpp", "hpp", "cs", "m", "js", "mjs", "cjs", "ts", "tsx", "jsx", "vue", "css", "scss", "less",
+            "sh", "bash", "zsh", "bat", "ps1", "sql", "proto", "graphql",
+            "yml", "yaml", "properties", "toml", "ini", "cfg", "conf", "env", "json", "xml", "xsd", "gitignore", "editorconfig");
+
+    /** 无扩展名但内容为文本的常见文件 */
+    private static final Set<String> TEXT_FILENAMES = Set.of(
+            "dockerfile", "makefile", "license", "notice", "readme", "changelog", "jenkinsfile", "procfile");
+
+    /** 内容为二进制、由 Tika 解析的文档格式 */
+    private static final Set<String> DOCUMENT_EXTENSIONS = Set.of(
+            "pdf", "doc", "docx", "ppt", "pptx", "xls", "xlsx", "odt", "ods", "odp", "rtf", "epub", "html", "htm");
+
+    /** 探测二进制内容时检查的前缀长度 */
+    public static final int BINARY_PROBE_BYTES = 8192;
+
+    private final ParseCache parseCache;
+
+    public DocumentReaderRegistry(ParseCache parseCache) {
+        this.parseCache = parseCache;
+    }
+
+    /**
+     * 解析结果
+     *
+     * @param documents 解析出的文档
+     * @param reader    实际使用的解析方式：text / tika / cache
+     */
+    public record Parsed(List<Document> documents, String reader) {
+    }
+
+    /**
+     * 解析文件
+     *
+     * @param filename 文件名（可带路径），用于选择解析方式并写入 source 元数据
+     * @param content  文件内容
+     * @return 解析结果
+     */
+    public Parsed read(String filename, byte[] content) {
+        return read(filename, content, true);
+    }
+
+    /**
+     * 解析文件
+     *
+     * @param filename 文件名（可带路径），用于选择解析方式并写入 source 元数据
+     * @param content  文件内容
+     * @param useCache 是否读写解析结果缓存；启动预热等合成内容传 false，不写入各节点共享的缓存
+     * @return 解析结果
+     */
+    public Parsed read(String filename, byte[] content, boolean useCache) {
+        if (isTextFile(filename)) {
+            String text = decodeUtf8(content);
+            if (text != null) return new Parsed(List.of(document(text, filename)), READER_TEXT);
+        }
+
+        String hash = useCache ? ParseCache.hash(content) : null;
+        String cached = useCache ? parseCache.get(hash) : null;
+        if (cached != null) return new Parsed(List.of(document(cached, filename)), READER_CACHE);
+
+        List<Document> documents = new TikaDocumentReader(new ByteArrayResource(content) {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+        }).get();
+        // TikaDocumentReader 只产出一个文档，多文档时不缓存
+        if (useCache && documents.size() == 1 && documents.get(0).getContent() != null) {
+            parseCache.put(hash, documents.get(0).getContent());
+        }
+        return new Parsed(new ArrayList<>(documents), READER_TIKA);
+    }
+
+    /**
+     * 是否按纯文本处理
+     */
+    public static boolean isTextFile(String filename) {
+        if (filename == null) return false;
+        String name = filename.substring(Math.max(filename.lastIndexOf('/'), filename.lastIndexOf('\\')) + 1).toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) return TEXT_FILENAMES.contains(name);
+        return TEXT_EXTENSIONS.contains(name.substring(dot + 1));
+    }
+
+    /**
+     * 是否为 Tika 解析的文档格式（如 PDF、Word）
+     */
+    public static boolean isDocumentFile(String filename) {
+        if (filename == null) return false;
+        String name = filename.toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && DOCUMENT_EXTENSIONS.contains(name.substring(dot + 1));
+    }
+
+    /**
+     * 内容前缀中是否含 NUL 字节（与 Git 判断二进制文件的方式一致）
+     */
+    public static boolean isBinary(byte[] content) {
+        int probe = Math.min(content.length, BINARY_PROBE_BYTES);
+        for (int i = 0; i < probe; i++) {
+            if (content[i] == 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 严格 UTF-8 解码，跳过 BOM；含 NUL 字节或存在非法序列时返回 null
+     */
+    static String decodeUtf8(byte[] content) {
+        if (isBinary(content)) return null;
+        int offset = content.length >= 3 && (content[0] & 0xFF) == 0xEF && (content[1] & 0xFF) == 0xBB && (content[2] & 0xFF) == 0xBF ? 3 : 0;
+
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        try {
+            CharBuffer chars = decoder.decode(ByteBuffer.wrap(content, offset, content.length - offset));
+            return chars.toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    private static Document document(String text, String filename) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(ChunkUpserter.METADATA_SOURCE, filename);
+        return new Document(text, metadata);
+    }
+
+}
@@ -0,0 +1,33 @@
+package cn.google.rag;
+
+import org.springframework.ai.embedding.EmbeddingClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 按模型名称获取嵌入客户端
+ * <p>
+ * 切换嵌入模型期间，同一进程需要同时使用新旧两个模型：未切换的知识库按旧模型检索，
+ * 已切换到影子表的知识库及迁移任务按新模型向量化（见 {@link EmbeddingRoutes}）。
+ * 客户端按模型名称创建一次后复用。
+ *
+ */
+public class EmbeddingClients {
+
+    private final Function<String, ? extends EmbeddingClient> factory;
+    private final Map<String, EmbeddingClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * @param factory 根据模型名称创建嵌入客户端
+     */
+    public EmbeddingClients(Function<String, ? extends EmbeddingClient> factory) {
+        this.factory = factory;
+    }
+
+    public EmbeddingClient get(String model) {
+        return clients.computeIfAbsent(model, factory);
+    }
+
+}
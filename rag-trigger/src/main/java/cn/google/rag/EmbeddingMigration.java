@@ -0,0 +1,573 @@
+package cn.google.rag;
+
+import cn.google.metrics.RagMetrics;
+import cn.google.response.EmbeddingMigrationStatus;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.codec.CompositeCodec;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.vectorstore.PgVectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * 在线切换嵌入模型
+ * <p>
+ * nomic-embed-text 与 OpenAI 嵌入的维度不同，旧向量无法与新模型的查询向量比较。迁移任务不依赖原始文件，
+ * 直接用库中保存的片段文本重新向量化：
+ * <ol>
+ *     <li>在影子表 {@value #SHADOW_TABLE} 中按目标模型的维度建表建索引</li>
+ *     <li>逐个知识库按 id 键集分页从读库读取片段，分批调用嵌入模型（多批并行；Ollama 模型每批内再由 {@link ParallelEmbeddingClient} 并发逐条请求），写入影子表；已写入的片段跳过，任务失败后可重新执行</li>
+ *     <li>补齐迁移期间的新增、删除与元数据变化，然后在一个事务中锁住主向量表的写入、补齐最后的差异并写入检索路由，
+ *     该知识库的检索即切换到影子表与新模型（见 {@link EmbeddingRoutes}）</li>
+ *     <li>已切换的知识库继续入库时，新片段仍按旧模型写入主向量表，并异步同步到影子表（{@link #mirror(String, String)}）</li>
+ * </ol>
+ * 全部知识库切换后调用 {@link #finalizeMigration()}，影子表改名为主向量表，旧表保留为 {@value #RETIRED_TABLE}；
+ * 随后将 spring.ai.rag.embed 改为目标模型并逐台重启。整个过程中检索不中断。
+ * <p>
+ * 同一时间只允许一个迁移任务（Redis 分布式锁），进度保存在 Redis 中，任意节点均可查询。
+ *
+ */
+@Slf4j
+@Component
+public class EmbeddingMigration {
+
+    public static final String SHADOW_TABLE = PgVectorStore.VECTOR_TABLE_NAME + "_shadow";
+    public static final String RETIRED_TABLE = PgVectorStore.VECTOR_TABLE_NAME + "_retired";
+
+    public static final String STATE_RUNNING = "running";
+    public static final String STATE_COMPLETED = "completed";
+    public static final String STATE_FAILED = "failed";
+
+    private static final String TABLE = PgVectorStore.VECTOR_TABLE_NAME;
+    private static final String FIRST_ID = "00000000-0000-0000-0000-000000000000";
+    private static final int SWAP_ATTEMPTS = 5;
+    /** 主向量表片段（别名 v）尚未写入影子表或内容已变化 */
+    private static final String PENDING = "NOT EXISTS (SELECT 1 FROM " + SHADOW_TABLE + " s WHERE s.id = v.id AND s.content IS NOT DISTINCT FROM v.content)";
+    /** PostgreSQL 标识符最大长度 */
+    private static final int MAX_IDENTIFIER_LENGTH = 63;
+
+    private static final String JOB_KEY_PREFIX = "embedding:migration:";
+    private static final String LOCK_KEY = "embedding:migration:lock";
+
+    private static final String FIELD_TARGET_MODEL = "targetModel";
+    private static final String FIELD_STATE = "state";
+    private static final String FIELD_CURRENT = "currentRagTag";
+    private static final String FIELD_SWITCHED = "switchedRagTags";
+    private static final String FIELD_ERROR = "error";
+    private static final String COUNTER_DIMENSIONS = "dimensions";
+    private static final String COUNTER_TOTAL = "total";
+    private static final String COUNTER_MIGRATED = "migrated";
+    private static final String COUNTER_STARTED_AT = "startedAt";
+    private static final String COUNTER_FINISHED_AT = "finishedAt";
+
+    private static final Codec COUNTER_CODEC = new CompositeCodec(StringCodec.INSTANCE, LongCodec.INSTANCE);
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private JdbcTemplate readJdbcTemplate;
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private EmbeddingClients embeddingClients;
+    @Resource
+    private EmbeddingRoutes embeddingRoutes;
+    @Resource
+    private RagTagRegistry ragTagRegistry;
+    @Resource
+    private RagMetrics ragMetrics;
+
+    @Value("${rag.migration.page-size:1000}")
+    private int pageSize;
+    @Value("${rag.migration.embed-batch-size:64}")
+    private int embedBatchSize;
+    @Value("${rag.migration.parallelism:4}")
+    private int parallelism;
+    @Value("${rag.migration.lock-timeout-ms:10000}")
+    private long lockTimeoutMs;
+    @Value("${rag.migration.ttl-hours:168}")
+    private long ttlHours;
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(r -> new Thread(r, "embedding-migration"));
+    private final ExecutorService mirrorRunner = Executors.newSingleThreadExecutor(r -> new Thread(r, "embedding-mirror"));
+    /** 排队中的同步（知识库标签 + 来源） */
+    private final Set<String> pendingMirrors = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 待迁移的片段
+     */
+    private record Row(String id, String content, String metadata) {
+    }
+
+    @PreDestroy
+    public void stop() {
+        runner.shutdownNow();
+        mirrorRunner.shutdownNow();
+    }
+
+    /**
+     * 启动迁移任务，在后台执行
+     *
+     * @param targetModel 目标嵌入模型
+     * @param ragTag      只迁移该知识库，为空时迁移全部知识库
+     * @return 任务ID
+     */
+    public String start(String targetModel, String ragTag) {
+        if (targetModel == null || targetModel.isBlank()) throw new IllegalArgumentException("目标嵌入模型不能为空");
+        if (embeddingRoutes.isPrimary(new EmbeddingRoutes.Route(TABLE, targetModel))) {
+            throw new IllegalArgumentException("目标嵌入模型与当前模型相同 " + targetModel);
+        }
+        // 未登记的模型在此抛出 IllegalArgumentException，不创建任务
+        embeddingClients.get(targetModel);
+        if (redissonClient.getLock(LOCK_KEY).isLocked()) throw new IllegalStateException("已有迁移任务在执行");
+        boolean all = ragTag == null || ragTag.isBlank();
+        if (!all && !ragTagRegistry.contains(ragTag)) throw new IllegalArgumentException("知识库不存在 " + ragTag);
+        List<String> tags = all ? ragTagRegistry.snapshot().tags() : List.of(ragTag);
+
+        String jobId = UUID.randomUUID().toString();
+        Duration ttl = Duration.ofHours(ttlHours);
+        RMap<String, String> fields = fields(jobId);
+        fields.fastPut(FIELD_TARGET_MODEL, targetModel);
+        fields.fastPut(FIELD_STATE, STATE_RUNNING);
+        fields.fastPut(FIELD_SWITCHED, "");
+        fields.expire(ttl);
+        RMap<String, Long> counters = counters(jobId);
+        counters.fastPut(COUNTER_STARTED_AT, System.currentTimeMillis());
+        counters.expire(ttl);
+
+        runner.submit(() -> run(jobId, targetModel, tags));
+        log.info("嵌入模型迁移任务创建 jobId={} targetModel={} tags={}", jobId, targetModel, tags);
+        return jobId;
+    }
+
+    /**
+     * 查询迁移进度
+     *
+     * @param jobId 任务ID
+     * @return 进度，任务不存在或已过期时为 null
+     */
+    public EmbeddingMigrationStatus status(String jobId) {
+        Map<String, String> fields = fields(jobId).readAllMap();
+        if (fields.isEmpty()) return null;
+        Map<String, Long> counters = counters(jobId).readAllMap();
+        long startedAt = counters.getOrDefault(COUNTER_STARTED_AT, 0L);
+        long finishedAt = counters.getOrDefault(COUNTER_FINISHED_AT, 0L);
+        long migrated = counters.getOrDefault(COUNTER_MIGRATED, 0L);
+        long elapsedMs = (finishedAt > 0 ? finishedAt : System.currentTimeMillis()) - startedAt;
+        String switched = fields.getOrDefault(FIELD_SWITCHED, "");
+        return EmbeddingMigrationStatus.builder()
+                .jobId(jobId)
+                .targetModel(fields.get(FIELD_TARGET_MODEL))
+                .dimensions(counters.getOrDefault(COUNTER_DIMENSIONS, 0L).intValue())
+                .state(fields.get(FIELD_STATE))
+                .currentRagTag(fields.get(FIELD_CURRENT))
+                .total(counters.getOrDefault(COUNTER_TOTAL, 0L))
+                .migrated(migrated)
+                .rowsPerSecond(elapsedMs <= 0 ? 0 : migrated * 1000d / elapsedMs)
+                .switchedRagTags(switched.isEmpty() ? List.of() : Arrays.asList(switched.split("\n")))
+                .startedAt(startedAt)
+                .finishedAt(finishedAt)
+                .error(fields.get(FIELD_ERROR))
+                .build();
+    }
+
+    /**
+     * 已切换到影子表的知识库入库后调用，将该来源的变化异步同步到影子表
+     * <p>
+     * 按本地缓存的路由判断是否需要同步，没有知识库切换到影子表时不访问数据库；同一来源排队中的同步合并为一次。
+     * 路由刚切换、失效消息尚未到达的节点可能漏掉同步，迁移任务结束前与收尾时会再补齐一次。
+     *
+     * @param ragTag 知识库标签，为空时同步全部已切换的知识库
+     * @param source 来源，为空时同步整个知识库
+     */
+    public void mirror(String ragTag, String source) {
+        Map<String, EmbeddingRoutes.Route> routes = embeddingRoutes.routes();
+        if (ragTag != null) {
+            EmbeddingRoutes.Route route = routes.get(ragTag);
+            if (route != null && SHADOW_TABLE.equals(route.table())) submitMirror(ragTag, source);
+            return;
+        }
+        routes.forEach((tag, route) -> {
+            if (SHADOW_TABLE.equals(route.table())) submitMirror(tag, null);
+        });
+    }
+
+    private void submitMirror(String ragTag, String source) {
+        String key = ragTag + '\u0000' + (source == null ? "" : source);
+        if (!pendingMirrors.add(key)) return;
+        mirrorRunner.execute(() -> {
+            pendingMirrors.remove(key);
+            try {
+                // 执行时重新读取路由，期间可能已收尾或回退
+                EmbeddingRoutes.Route route = embeddingRoutes.load(ragTag);
+                if (route == null || !SHADOW_TABLE.equals(route.table())) return;
+                sync(jdbcTemplate, embeddingClients.get(route.model()), ragTag, source);
+            } catch (RuntimeException e) {
+                log.warn("同步影子表失败，迁移收尾时补齐 ragTag={} source={}", ragTag, source, e);
+            }
+        });
+    }
+
+    /**
+     * 全部知识库切换后，影子表改名为主向量表（旧表改名为 {@value #RETIRED_TABLE}），索引名随之交换；
+     * 路由改指向主向量表，并登记 {@value EmbeddingRoutes#DEFAULT_TAG} 路由，尚未改用新模型重启的节点按路由以新模型检索与入库（见 {@link ChunkUpserter}）。
+     * 收尾事务提交后、各节点路由缓存失效前的少量入库会因维度不一致失败，由入库队列重试。
+     * 收尾与迁移任务持有同一把锁，任务执行期间不能收尾
+     */
+    public void finalizeMigration() {
+        // 与迁移任务互斥：任务复制或同步期间改名影子表会使其中途失败，或写入被 prepareShadow 重新创建的空表
+        RLock lock = redissonClient.getLock(LOCK_KEY);
+        if (!lock.tryLock()) throw new IllegalStateException("已有迁移任务在执行");
+        try {
+            Map<String, EmbeddingRoutes.Route> routes = embeddingRoutes.loadAll();
+            List<String> pending = new ArrayList<>();
+            for (String tag : ragTagRegistry.snapshot().tags()) {
+                EmbeddingRoutes.Route route = routes.get(tag);
+                if (route == null || !SHADOW_TABLE.equals(route.table())) pending.add(tag);
+            }
+            if (!pending.isEmpty()) throw new IllegalStateException("以下知识库尚未切换 " + pending);
+            String targetModel = routes.values().stream().filter(route -> SHADOW_TABLE.equals(route.table()))
+                    .map(EmbeddingRoutes.Route::model).findFirst()
+                    .orElseThrow(() -> new IllegalStateException("没有已切换的知识库"));
+
+            // 补齐各节点漏掉的同步（向量化在锁外完成），锁内只同步删除与元数据并确认没有遗漏
+            for (Map.Entry<String, EmbeddingRoutes.Route> route : routes.entrySet()) {
+                if (SHADOW_TABLE.equals(route.getValue().table())) {
+                    sync(jdbcTemplate, embeddingClients.get(route.getValue().model()), route.getKey(), null);
+                }
+            }
+
+            inTransaction(tx -> {
+                if (tx.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, RETIRED_TABLE)) {
+                    throw new IllegalStateException(RETIRED_TABLE + " 已存在，请先确认并删除上一次迁移保留的旧表");
+                }
+                tx.execute("LOCK TABLE " + TABLE + ", " + SHADOW_TABLE + " IN ACCESS EXCLUSIVE MODE");
+                for (Map.Entry<String, EmbeddingRoutes.Route> route : routes.entrySet()) {
+                    if (!SHADOW_TABLE.equals(route.getValue().table())) continue;
+                    copyChanges(tx, route.getKey(), null);
+                    if (hasPending(tx, route.getKey())) throw new IllegalStateException("知识库 " + route.getKey() + " 仍有未同步的片段，请重试");
+                }
+
+                Map<String, String> oldIndexes = indexes(tx, TABLE);
+                String vectorIndex = null;
+                for (Map.Entry<String, String> index : oldIndexes.entrySet()) {
+                    if (index.getValue().toLowerCase().contains("using hnsw")) vectorIndex = index.getKey();
+                    String retired = index.getKey().startsWith(TABLE) ? renamePrefix(index.getKey(), TABLE, RETIRED_TABLE) : identifier(index.getKey() + "_retired");
+                    tx.execute("ALTER INDEX " + quote(index.getKey()) + " RENAME TO " + quote(retired));
+                }
+                tx.execute("ALTER TABLE " + TABLE + " RENAME TO " + RETIRED_TABLE);
+
+                // 向量索引沿用旧表的名称（PgVectorStore 启动时按名称 IF NOT EXISTS 建索引），其余索引去掉影子表前缀
+                for (Map.Entry<String, String> index : indexes(tx, SHADOW_TABLE).entrySet()) {
+                    boolean isVectorIndex = vectorIndex != null && index.getValue().toLowerCase().contains("using hnsw");
+                    String name = isVectorIndex ? vectorIndex : renamePrefix(index.getKey(), SHADOW_TABLE, TABLE);
+                    tx.execute("ALTER INDEX " + quote(index.getKey()) + " RENAME TO " + quote(name));
+                }
+                tx.execute("ALTER TABLE " + SHADOW_TABLE + " RENAME TO " + TABLE);
+                tx.update("UPDATE " + EmbeddingRoutes.ROUTE_TABLE + " SET table_name = ? WHERE table_name = ?", TABLE, SHADOW_TABLE);
+                embeddingRoutes.save(tx, EmbeddingRoutes.DEFAULT_TAG, new EmbeddingRoutes.Route(TABLE, targetModel));
+            });
+            embeddingRoutes.publish();
+            log.info("嵌入模型迁移收尾完成，影子表已成为主向量表，旧表保留为 {}", RETIRED_TABLE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run(String jobId, String targetModel, List<String> tags) {
+        RLock lock = redissonClient.getLock(LOCK_KEY);
+        if (!lock.tryLock()) {
+            fail(jobId, "已有迁移任务在执行");
+            return;
+        }
+        try {
+            EmbeddingClient client = embeddingClients.get(targetModel);
+            int dimensions = client.dimensions();
+            counters(jobId).fastPut(COUNTER_DIMENSIONS, (long) dimensions);
+            prepareShadow(targetModel, dimensions);
+
+            long total = 0;
+            for (String tag : tags) {
+                total += jdbcTemplate.queryForObject(
+                        "SELECT count(*) FROM " + TABLE + " WHERE metadata->>'knowledge' = ?", Long.class, tag);
+            }
+            counters(jobId).fastPut(COUNTER_TOTAL, total);
+
+            List<String> switched = new ArrayList<>();
+            for (String tag : tags) {
+                fields(jobId).fastPut(FIELD_CURRENT, tag);
+                EmbeddingRoutes.Route route = embeddingRoutes.load(tag);
+                if (route == null || !SHADOW_TABLE.equals(route.table())) {
+                    long start = System.currentTimeMillis();
+                    copy(jobId, client, tag);
+                    // 先在锁外补齐大部分差异，缩短切换时锁住写入的时间
+                    sync(jdbcTemplate, client, tag, null);
+                    swap(client, targetModel, tag);
+                    log.info("知识库已切换到新嵌入模型 ragTag={} model={} elapsedMs={}", tag, targetModel, System.currentTimeMillis() - start);
+                }
+                switched.add(tag);
+                fields(jobId).fastPut(FIELD_SWITCHED, String.join("\n", switched));
+            }
+
+            // 补齐切换后、各节点路由缓存失效前漏掉的同步
+            for (String tag : switched) {
+                sync(jdbcTemplate, client, tag, null);
+            }
+
+            fields(jobId).fastRemove(FIELD_CURRENT);
+            fields(jobId).fastPut(FIELD_STATE, STATE_COMPLETED);
+            counters(jobId).fastPut(COUNTER_FINISHED_AT, System.currentTimeMillis());
+            log.info("嵌入模型迁移完成 jobId={} tags={}", jobId, switched.size());
+        } catch (Exception e) {
+            log.error("嵌入模型迁移失败 jobId={}", jobId, e);
+            fail(jobId, String.valueOf(e.getMessage()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按目标维度准备影子表；已存在但维度或模型不同且尚无知识库切换时重建
+     */
+    private void prepareShadow(String targetModel, int dimensions) {
+        List<Integer> typmod = jdbcTemplate.queryForList(
+                "SELECT atttypmod FROM pg_attribute WHERE attrelid = to_regclass(?) AND attname = 'embedding'",
+                Integer.class, SHADOW_TABLE);
+        List<EmbeddingRoutes.Route> shadowRoutes = embeddingRoutes.loadAll().values().stream()
+                .filter(route -> SHADOW_TABLE.equals(route.table()))
+                .toList();
+        boolean inUse = !shadowRoutes.isEmpty();
+        boolean sameModel = shadowRoutes.stream().allMatch(route -> targetModel.equals(route.model()));
+        if (!typmod.isEmpty() && (typmod.get(0) != dimensions || !sameModel)) {
+            if (inUse) throw new IllegalStateException("影子表已有知识库以其他模型检索，请先完成或回退上一次迁移");
+            jdbcTemplate.execute("DROP TABLE " + SHADOW_TABLE);
+        }
+
+        // 元数据列类型与主向量表一致
+        String metadataType = jdbcTemplate.queryForObject(
+                "SELECT format_type(atttypid, atttypmod) FROM pg_attribute WHERE attrelid = to_regclass(?) AND attname = 'metadata'",
+                String.class, TABLE);
+        String column = "jsonb".equals(metadataType) ? "metadata" : "(metadata::jsonb)";
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + SHADOW_TABLE + " (id uuid DEFAULT uuid_generate_v4() PRIMARY KEY, " +
+                "content text, metadata " + metadataType + ", embedding vector(" + dimensions + "))");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + SHADOW_TABLE + "_knowledge_source_idx ON " + SHADOW_TABLE +
+                " ((metadata->>'knowledge'), (metadata->>'source'))");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + SHADOW_TABLE + "_metadata_gin_idx ON " + SHADOW_TABLE +
+                " USING gin (" + column + " jsonb_path_ops)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + SHADOW_TABLE + "_embedding_idx ON " + SHADOW_TABLE +
+                " USING hnsw (embedding vector_cosine_ops)");
+    }
+
+    /**
+     * 键集分页读取知识库片段，分批并行向量化后写入影子表；影子表中已有的片段跳过
+     */
+    private void copy(String jobId, EmbeddingClient client, String ragTag) {
+        Flux.<List<Row>, String>generate(() -> FIRST_ID, (lastId, sink) -> {
+                    List<Row> page = readJdbcTemplate.query(
+                            "SELECT v.id::text AS id, v.content, v.metadata::text AS metadata FROM " + TABLE + " v" +
+                                    " WHERE v.metadata->>'knowledge' = ? AND v.id > ?::uuid" +
+                                    " AND NOT EXISTS (SELECT 1 FROM " + SHADOW_TABLE + " s WHERE s.id = v.id)" +
+                                    " ORDER BY v.id LIMIT ?",
+                            (rs, rowNum) -> new Row(rs.getString("id"), rs.getString("content"), rs.getString("metadata")),
+                            ragTag, lastId, pageSize);
+                    if (page.isEmpty()) {
+                        sink.complete();
+                        return lastId;
+                    }
+                    sink.next(page);
+                    return page.get(page.size() - 1).id();
+                })
+                .concatMapIterable(page -> partition(page, embedBatchSize))
+                .flatMap(batch -> Mono.fromCallable(() -> write(jdbcTemplate, client, batch))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .retryWhen(Retry.backoff(3, Duration.ofSeconds(1))), parallelism)
+                .doOnNext(rows -> {
+                    counters(jobId).addAndGet(COUNTER_MIGRATED, (long) rows);
+                    ragMetrics.recordMigratedRows(ragTag, rows);
+                })
+                .blockLast();
+    }
+
+    /**
+     * 在一个事务中锁住主向量表的写入（不影响读取），同步删除与元数据变化并写入路由，提交后该知识库改用影子表检索。
+     * 锁内不调用嵌入模型：新增片段已在锁外向量化，锁内只确认没有遗漏；锁外补齐之后又有新增写入时回滚，补齐后重试
+     */
+    private void swap(EmbeddingClient client, String targetModel, String ragTag) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                inTransaction(tx -> {
+                    tx.execute("LOCK TABLE " + TABLE + " IN SHARE MODE");
+                    copyChanges(tx, ragTag, null);
+                    if (hasPending(tx, ragTag)) throw new IllegalStateException("知识库切换期间有新片段写入 " + ragTag);
+                    embeddingRoutes.save(tx, ragTag, new EmbeddingRoutes.Route(SHADOW_TABLE, targetModel));
+                });
+                embeddingRoutes.publish();
+                return;
+            } catch (RuntimeException e) {
+                // 等锁超时（有长时间运行的写入）或锁外补齐后又有写入，补齐差异后重试
+                if (attempt >= SWAP_ATTEMPTS) throw e;
+                log.warn("知识库切换失败，重试 ragTag={} attempt={}", ragTag, attempt, e);
+                sync(jdbcTemplate, client, ragTag, null);
+            }
+        }
+    }
+
+    /**
+     * 使影子表与主向量表一致：同步删除与元数据变化，向量化主表中新增的片段
+     */
+    private void sync(JdbcTemplate tx, EmbeddingClient client, String ragTag, String source) {
+        Object[] args = source == null ? new Object[]{ragTag} : new Object[]{ragTag, source};
+        copyChanges(tx, ragTag, source);
+
+        String lastId = FIRST_ID;
+        while (true) {
+            Object[] pageArgs = Arrays.copyOf(args, args.length + 2);
+            pageArgs[args.length] = lastId;
+            pageArgs[args.length + 1] = pageSize;
+            List<Row> page = tx.query(
+                    "SELECT v.id::text AS id, v.content, v.metadata::text AS metadata FROM " + TABLE + " v WHERE " + scope("v", source) +
+                            " AND v.id > ?::uuid AND " + PENDING + " ORDER BY v.id LIMIT ?",
+                    (rs, rowNum) -> new Row(rs.getString("id"), rs.getString("content"), rs.getString("metadata")),
+                    pageArgs);
+            if (page.isEmpty()) return;
+            for (List<Row> batch : partition(page, embedBatchSize)) {
+                write(tx, client, batch);
+                ragMetrics.recordMigratedRows(ragTag, batch.size());
+            }
+            lastId = page.get(page.size() - 1).id();
+        }
+    }
+
+    /**
+     * 不需要向量化的变化：删除主表中已不存在的片段，同步元数据
+     */
+    private void copyChanges(JdbcTemplate tx, String ragTag, String source) {
+        Object[] args = source == null ? new Object[]{ragTag} : new Object[]{ragTag, source};
+        tx.update("DELETE FROM " + SHADOW_TABLE + " s WHERE " + scope("s", source) +
+                " AND NOT EXISTS (SELECT 1 FROM " + TABLE + " v WHERE v.id = s.id)", args);
+        tx.update("UPDATE " + SHADOW_TABLE + " s SET metadata = v.metadata FROM " + TABLE + " v WHERE s.id = v.id AND " + scope("v", source) +
+                " AND s.metadata::jsonb IS DISTINCT FROM v.metadata::jsonb", args);
+    }
+
+    /**
+     * 主向量表中是否还有未写入影子表（或内容已变化）的片段
+     */
+    private boolean hasPending(JdbcTemplate tx, String ragTag) {
+        return Boolean.TRUE.equals(tx.queryForObject("SELECT EXISTS (SELECT 1 FROM " + TABLE + " v WHERE " + scope("v", null) +
+                " AND " + PENDING + ")", Boolean.class, ragTag));
+    }
+
+    private int write(JdbcTemplate tx, EmbeddingClient client, List<Row> batch) {
+        List<List<Double>> embeddings = client.embed(batch.stream().map(row -> row.content() == null ? "" : row.content()).toList());
+        List<Object[]> args = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Row row = batch.get(i);
+            args.add(new Object[]{row.id(), row.content(), row.metadata(), BatchRagService.formatVector(embeddings.get(i))});
+        }
+        tx.batchUpdate("INSERT INTO " + SHADOW_TABLE + " (id, content, metadata, embedding) VALUES (?::uuid, ?, ?::jsonb, ?::vector) " +
+                "ON CONFLICT (id) DO UPDATE SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding", args);
+        return batch.size();
+    }
+
+    /**
+     * 在写库的一个事务中执行，等锁时间受 rag.migration.lock-timeout-ms 限制
+     */
+    private void inTransaction(Consumer<JdbcTemplate> work) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                JdbcTemplate tx = new JdbcTemplate(new SingleConnectionDataSource(con, true));
+                tx.execute("SET LOCAL lock_timeout = " + lockTimeoutMs);
+                work.accept(tx);
+                con.commit();
+                return null;
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    private static Map<String, String> indexes(JdbcTemplate tx, String table) {
+        Map<String, String> indexes = new LinkedHashMap<>();
+        tx.query("SELECT indexname, indexdef FROM pg_indexes WHERE schemaname = current_schema() AND tablename = ?",
+                rs -> {
+                    indexes.put(rs.getString("indexname"), rs.getString("indexdef"));
+                }, table);
+        return indexes;
+    }
+
+    /**
+     * 将名称的 from 前缀替换为 to，不以 from 开头的名称保持不变
+     */
+    private static String renamePrefix(String name, String from, String to) {
+        return name.startsWith(from) ? identifier(to + name.substring(from.length())) : name;
+    }
+
+    private static String identifier(String name) {
+        return name.length() > MAX_IDENTIFIER_LENGTH ? name.substring(0, MAX_IDENTIFIER_LENGTH) : name;
+    }
+
+    private static String quote(String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    private static String scope(String alias, String source) {
+        return alias + ".metadata->>'knowledge' = ?" + (source == null ? "" : " AND " + alias + ".metadata->>'source' = ?");
+    }
+
+    private static <T> List<List<T>> partition(List<T> list, int size) {
+        List<List<T>> parts = new ArrayList<>((list.size() + size - 1) / size);
+        for (int i = 0; i < list.size(); i += size) {
+            parts.add(list.subList(i, Math.min(i + size, list.size())));
+        }
+        return parts;
+    }
+
+    private void fail(String jobId, String error) {
+        fields(jobId).fastPut(FIELD_STATE, STATE_FAILED);
+        fields(jobId).fastPut(FIELD_ERROR, error);
+        counters(jobId).fastPut(COUNTER_FINISHED_AT, System.currentTimeMillis());
+    }
+
+    private RMap<String, String> fields(String jobId) {
+        return redissonClient.getMap(JOB_KEY_PREFIX + jobId, StringCodec.INSTANCE);
+    }
+
+    private RMap<String, Long> counters(String jobId) {
+        return redissonClient.getMap(JOB_KEY_PREFIX + jobId + ":counters", COUNTER_CODEC);
+    }
+
+}
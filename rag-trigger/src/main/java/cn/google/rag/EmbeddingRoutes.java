@@ -0,0 +1,164 @@
+package cn.google.rag;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.ai.vectorstore.PgVectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 知识库检索路由：每个知识库从哪张向量表、以哪个嵌入模型检索
+ * <p>
+ * 未登记的知识库使用默认路由（{@link PgVectorStore#VECTOR_TABLE_NAME} + spring.ai.rag.embed）。
+ * 迁移收尾后登记 {@value #DEFAULT_TAG} 路由（主向量表 + 新模型），尚未以新配置重启的节点据此以新模型检索与写入。
+ * 切换嵌入模型时，迁移任务（{@link EmbeddingMigration}）把知识库重新向量化到影子表，完成后在同一事务中写入路由，
+ * 该知识库此后的检索改用影子表与新模型；未切换的知识库不受影响。
+ * <p>
+ * 路由保存在写库的 vector_store_route 表中，各节点在本地缓存；路由变化时通过 Redis 发布订阅广播失效消息。
+ *
+ */
+@Slf4j
+@Component
+public class EmbeddingRoutes {
+
+    public static final String ROUTE_TABLE = PgVectorStore.VECTOR_TABLE_NAME + "_route";
+    /** 未单独登记的知识库使用的路由，嵌入模型迁移收尾时写入 */
+    public static final String DEFAULT_TAG = "*";
+    private static final String TOPIC_KEY = "embedding:route:invalidate";
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Value("${spring.ai.rag.embed}")
+    private String primaryModel;
+
+    private volatile Map<String, Route> routes;
+    /** 失效计数，防止加载期间收到的失效消息被加载结果覆盖 */
+    private final AtomicLong invalidations = new AtomicLong();
+    private RTopic topic;
+    private int listenerId;
+
+    /**
+     * 检索路由
+     *
+     * @param table 向量表
+     * @param model 嵌入模型名称
+     */
+    public record Route(String table, String model) {
+    }
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + ROUTE_TABLE + " (" +
+                "rag_tag text PRIMARY KEY, table_name text NOT NULL, embed_model text NOT NULL, switched_at timestamptz NOT NULL DEFAULT now())");
+        topic = redissonClient.getTopic(TOPIC_KEY, StringCodec.INSTANCE);
+        listenerId = topic.addListener(String.class, (channel, message) -> invalidateLocal());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (topic != null) topic.removeListener(listenerId);
+    }
+
+    /**
+     * 知识库的检索路由，未登记时依次为 {@value #DEFAULT_TAG} 路由、默认路由
+     */
+    public Route route(String ragTag) {
+        Map<String, Route> current = routes();
+        Route route = current.get(ragTag);
+        if (route == null) route = current.get(DEFAULT_TAG);
+        return route == null ? primary() : route;
+    }
+
+    /**
+     * 默认路由：主向量表 + 当前配置的嵌入模型
+     */
+    public Route primary() {
+        return new Route(PgVectorStore.VECTOR_TABLE_NAME, primaryModel);
+    }
+
+    public boolean isPrimary(Route route) {
+        return PgVectorStore.VECTOR_TABLE_NAME.equals(route.table()) && primaryModel.equalsIgnoreCase(route.model());
+    }
+
+    /**
+     * 全部已登记的路由
+     */
+    public Map<String, Route> routes() {
+        Map<String, Route> current = routes;
+        if (current != null) return current;
+        long generation = invalidations.get();
+        Map<String, Route> snapshot = Map.copyOf(loadAll());
+        synchronized (this) {
+            if (generation == invalidations.get()) {
+                routes = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 直接从数据库读取知识库的路由，不经过本地缓存
+     *
+     * @return 路由，未登记时为 null
+     */
+    public Route load(String ragTag) {
+        List<Route> route = jdbcTemplate.query("SELECT table_name, embed_model FROM " + ROUTE_TABLE + " WHERE rag_tag = ?",
+                (rs, rowNum) -> new Route(rs.getString("table_name"), rs.getString("embed_model")), ragTag);
+        return route.isEmpty() ? null : route.get(0);
+    }
+
+    /**
+     * 直接从数据库读取全部路由，不经过本地缓存
+     */
+    public Map<String, Route> loadAll() {
+        Map<String, Route> loaded = new HashMap<>();
+        jdbcTemplate.query("SELECT rag_tag, table_name, embed_model FROM " + ROUTE_TABLE,
+                rs -> {
+                    loaded.put(rs.getString("rag_tag"), new Route(rs.getString("table_name"), rs.getString("embed_model")));
+                });
+        return loaded;
+    }
+
+    /**
+     * 写入路由，须在切换知识库数据的同一事务中调用，提交后调用 {@link #publish()}
+     *
+     * @param tx     事务内的 JDBC 模板
+     * @param ragTag 知识库标签
+     * @param route  新路由
+     */
+    public void save(JdbcTemplate tx, String ragTag, Route route) {
+        tx.update("INSERT INTO " + ROUTE_TABLE + " (rag_tag, table_name, embed_model) VALUES (?, ?, ?) " +
+                        "ON CONFLICT (rag_tag) DO UPDATE SET table_name = EXCLUDED.table_name, embed_model = EXCLUDED.embed_model, switched_at = now()",
+                ragTag, route.table(), route.model());
+    }
+
+    /**
+     * 广播路由变化，各节点重新加载
+     */
+    public void publish() {
+        invalidateLocal();
+        topic.publish("*");
+    }
+
+    private void invalidateLocal() {
+        synchronized (this) {
+            invalidations.incrementAndGet();
+            routes = null;
+        }
+    }
+
+}
@@ -0,0 +1,376 @@
+package cn.google.rag;
+
+import cn.google.response.IngestJobStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.AutoClaimResult;
+import org.redisson.api.RBucket;
+import org.redisson.api.RCountDownLatch;
+import org.redisson.api.RMap;
+import org.redisson.api.RSet;
+import org.redisson.api.RStream;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.stream.StreamAddArgs;
+import org.redisson.api.stream.StreamCreateGroupArgs;
+import org.redisson.api.stream.StreamReadGroupArgs;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.codec.CompositeCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式入库队列
+ * <p>
+ * 一次上传 / 一次 Git 仓库分析为一个任务（job），任务内每个文件为一个子任务（task），
+ * 子任务写入 Redis Stream，所有 rag-app 节点的工作线程以同一消费组消费，实现入库吞吐的水平扩展。
+ * <ul>
+ *     <li>可见性超时：处理中的消息由工作线程定期 XCLAIM 续租；节点宕机后消息空闲超过超时时间，由其他节点 XAUTOCLAIM 接管</li>
+ *     <li>幂等重试：已完成的子任务记录在任务的完成集合中，重复投递直接确认；失败的子任务按指数退避延迟后重新入队，超过最大次数记为失败。
+ *     延迟期间原消息不确认，节点在此期间宕机时由可见性超时接管</li>
+ *     <li>完成屏障：每个任务一个 RCountDownLatch，子任务完成（成功或失败）时计数减一，调用方据此等待整个任务结束</li>
+ * </ul>
+ * 文件内容在入队时写入 Redis（带过期时间），子任务完成后删除，任意节点都能取到。
+ *
+ */
+@Slf4j
+@Component
+public class IngestQueue {
+
+    private static final String STREAM_KEY = "ingest:stream";
+    private static final String GROUP = "ingest-workers";
+    private static final String JOB_KEY_PREFIX = "ingest:job:";
+    private static final String BLOB_KEY_PREFIX = "ingest:blob:";
+
+    private static final String FIELD_JOB_ID = "jobId";
+    private static final String FIELD_TASK_ID = "taskId";
+    private static final String FIELD_RAG_TAG = "ragTag";
+    private static final String FIELD_FILENAME = "filename";
+    private static final String FIELD_REPO_COMMIT = "repoCommit";
+    private static final String FIELD_UPLOADED_AT = "uploadedAt";
+
+    private static final String COUNTER_TOTAL = "total";
+    private static final String COUNTER_COMPLETED = "completed";
+    private static final String COUNTER_FAILED = "failed";
+    private static final String COUNTER_CHUNKS = "chunks";
+
+    private static final Codec COUNTER_CODEC = new CompositeCodec(StringCodec.INSTANCE, LongCodec.INSTANCE);
+
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private DocumentIngestor documentIngestor;
+
+    @Value("${rag.ingest.workers:4}")
+    private int workers;
+    @Value("${rag.ingest.visibility-timeout-ms:300000}")
+    private long visibilityTimeoutMs;
+    @Value("${rag.ingest.max-attempts:3}")
+    private int maxAttempts;
+    @Value("${rag.ingest.ttl-hours:24}")
+    private long ttlHours;
+    @Value("${rag.ingest.retry-backoff-ms:2000}")
+    private long retryBackoffMs;
+    @Value("${rag.ingest.retry-backoff-max-ms:60000}")
+    private long retryBackoffMaxMs;
+
+    private final String nodeId = nodeName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    private ExecutorService workerPool;
+    private ScheduledExecutorService leaseRenewer;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        try {
+            stream().createGroup(StreamCreateGroupArgs.name(GROUP).id(new StreamMessageId(0, 0)).makeStream());
+        } catch (RedisException e) {
+            // BUSYGROUP：消费组已存在
+        }
+
+        running = true;
+        leaseRenewer = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "ingest-lease"));
+        // workers 为 0 时本节点只投递任务不消费（例如以命令行方式运行快照导入导出）
+        workerPool = Executors.newFixedThreadPool(Math.max(1, workers), r -> new Thread(r, "ingest-worker"));
+        for (int i = 0; i < workers; i++) {
+            String consumer = nodeId + "-" + i;
+            workerPool.submit(() -> workerLoop(consumer));
+        }
+        log.info("入库队列工作线程启动 node={} workers={}", nodeId, workers);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        workerPool.shutdown();
+        workerPool.awaitTermination(10, TimeUnit.SECONDS);
+        leaseRenewer.shutdownNow();
+    }
+
+    /**
+     * 创建入库任务
+     *
+     * @param ragTag 知识库标签
+     * @param total  文件总数
+     * @return 任务ID
+     */
+    public String createJob(String ragTag, int total) {
+        String jobId = UUID.randomUUID().toString();
+        Duration ttl = Duration.ofHours(ttlHours);
+
+        RMap<String, Long> counters = counters(jobId);
+        counters.fastPut(COUNTER_TOTAL, (long) total);
+        counters.expire(ttl);
+
+        RBucket<String> tag = redissonClient.getBucket(JOB_KEY_PREFIX + jobId + ":tag", StringCodec.INSTANCE);
+        tag.set(ragTag, ttl);
+
+        redissonClient.getCountDownLatch(JOB_KEY_PREFIX + jobId + ":latch").trySetCount(total);
+        return jobId;
+    }
+
+    /**
+     * 提交一个文件子任务
+     *
+     * @param jobId    任务ID
+     * @param ragTag   知识库标签
+     * @param filename   文件名或仓库内相对路径（用于选择解析方式，同时作为片段来源）
+     * @param repoCommit Git 仓库提交ID，上传文件为 null
+     * @param content    文件内容
+     */
+    public void enqueue(String jobId, String ragTag, String filename, String repoCommit, byte[] content) {
+        String taskId = UUID.randomUUID().toString();
+        RBucket<byte[]> blob = redissonClient.getBucket(BLOB_KEY_PREFIX + taskId, ByteArrayCodec.INSTANCE);
+        blob.set(content, Duration.ofHours(ttlHours));
+
+        Map<String, String> fields = new HashMap<>();
+        fields.put(FIELD_JOB_ID, jobId);
+        fields.put(FIELD_TASK_ID, taskId);
+        fields.put(FIELD_RAG_TAG, ragTag);
+        fields.put(FIELD_FILENAME, filename == null ? "" : filename);
+        fields.put(FIELD_REPO_COMMIT, repoCommit == null ? "" : repoCommit);
+        fields.put(FIELD_UPLOADED_AT, String.valueOf(System.currentTimeMillis()));
+        stream().add(StreamAddArgs.entries(fields));
+    }
+
+    /**
+     * 将一个无法入队的文件（如读取失败）直接记为失败
+     *
+     * @param jobId 任务ID
+     */
+    public void markFailed(String jobId) {
+        finish(jobId, UUID.randomUUID().toString(), false, 0);
+    }
+
+    /**
+     * 等待任务全部完成
+     *
+     * @return 是否在超时前完成
+     */
+    public boolean await(String jobId, long timeout, TimeUnit unit) throws InterruptedException {
+        return redissonClient.getCountDownLatch(JOB_KEY_PREFIX + jobId + ":latch").await(timeout, unit);
+    }
+
+    /**
+     * 查询任务进度
+     *
+     * @return 任务不存在（或已过期）时返回 null
+     */
+    public IngestJobStatus status(String jobId) {
+        Map<String, Long> values = counters(jobId).readAllMap();
+        if (values.isEmpty()) return null;
+        long total = values.getOrDefault(COUNTER_TOTAL, 0L);
+        long completed = values.getOrDefault(COUNTER_COMPLETED, 0L);
+        long failed = values.getOrDefault(COUNTER_FAILED, 0L);
+        return IngestJobStatus.builder()
+                .jobId(jobId)
+                .ragTag(redissonClient.<String>getBucket(JOB_KEY_PREFIX + jobId + ":tag", StringCodec.INSTANCE).get())
+                .total(total)
+                .completed(completed)
+                .failed(failed)
+                .chunks(values.getOrDefault(COUNTER_CHUNKS, 0L))
+                .done(completed + failed >= total)
+                .build();
+    }
+
+    private void workerLoop(String consumer) {
+        StreamMessageId claimCursor = new StreamMessageId(0, 0);
+        long claimInterval = Math.max(1000, visibilityTimeoutMs / 2);
+        long nextClaimAt = 0;
+        while (running) {
+            try {
+                // 按固定间隔（以及没有新消息时）接管空闲超过可见性超时的消息（所属节点已宕机或卡死），
+                // 有积压时也不会让这些消息一直等到积压消费完
+                long now = System.currentTimeMillis();
+                if (now >= nextClaimAt) {
+                    nextClaimAt = now + claimInterval;
+                    AutoClaimResult<String, String> claimed = stream().autoClaim(GROUP, consumer,
+                            visibilityTimeoutMs, TimeUnit.MILLISECONDS, claimCursor, 1);
+                    claimCursor = claimed.getNextId();
+                    processAll(consumer, claimed.getMessages());
+                }
+
+                Map<StreamMessageId, Map<String, String>> messages = stream().readGroup(GROUP, consumer,
+                        StreamReadGroupArgs.neverDelivered().count(1).timeout(Duration.ofSeconds(2)));
+                if (messages == null || messages.isEmpty()) {
+                    nextClaimAt = 0;
+                    continue;
+                }
+                processAll(consumer, messages);
+            } catch (Exception e) {
+                if (running) {
+                    log.error("入库队列消费异常 consumer={}", consumer, e);
+                    sleepQuietly(1000);
+                }
+            }
+        }
+    }
+
+    private void processAll(String consumer, Map<StreamMessageId, Map<String, String>> messages) {
+        for (Map.Entry<StreamMessageId, Map<String, String>> entry : messages.entrySet()) {
+            process(consumer, entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void process(String consumer, StreamMessageId messageId, Map<String, String> fields) {
+        String jobId = fields.get(FIELD_JOB_ID);
+        String taskId = fields.get(FIELD_TASK_ID);
+        String ragTag = fields.get(FIELD_RAG_TAG);
+        String filename = fields.get(FIELD_FILENAME);
+
+        RSet<String> finished = redissonClient.getSet(JOB_KEY_PREFIX + jobId + ":finished", StringCodec.INSTANCE);
+        if (finished.contains(taskId)) {
+            // 重复投递，已处理过
+            acknowledge(messageId);
+            return;
+        }
+
+        RMap<String, Long> attempts = redissonClient.getMap(JOB_KEY_PREFIX + jobId + ":attempts", COUNTER_CODEC);
+        long attempt = attempts.addAndGet(taskId, 1L);
+        attempts.expire(Duration.ofHours(ttlHours));
+
+        byte[] content = redissonClient.<byte[]>getBucket(BLOB_KEY_PREFIX + taskId, ByteArrayCodec.INSTANCE).get();
+        if (content == null) {
+            log.error("入库子任务内容已过期 jobId={} file={}", jobId, filename);
+            finish(jobId, taskId, false, 0);
+            acknowledge(messageId);
+            return;
+        }
+
+        // 处理期间定期续租，避免被其他节点当作超时消息接管
+        long renewInterval = Math.max(1000, visibilityTimeoutMs / 3);
+        ScheduledFuture<?> lease = leaseRenewer.scheduleAtFixedRate(
+                () -> stream().claim(GROUP, consumer, 0, TimeUnit.MILLISECONDS, messageId),
+                renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+        try {
+            int chunks = documentIngestor.ingest(ragTag, origin(fields), content);
+            finish(jobId, taskId, true, chunks);
+        } catch (Exception e) {
+            if (attempt >= maxAttempts) {
+                log.error("入库子任务失败，重试次数已用尽 jobId={} file={} attempt={}", jobId, filename, attempt, e);
+                finish(jobId, taskId, false, 0);
+            } else {
+                long delay = retryDelay(attempt);
+                log.warn("入库子任务失败，{}ms 后重新入队 jobId={} file={} attempt={}", delay, jobId, filename, attempt, e);
+                leaseRenewer.schedule(() -> requeue(messageId, fields), delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+        } finally {
+            lease.cancel(false);
+        }
+        acknowledge(messageId);
+    }
+
+    /**
+     * 第 attempt 次失败后的重试延迟：按 2 的幂递增，不超过上限，且小于可见性超时，避免延迟期间被其他节点接管
+     */
+    private long retryDelay(long attempt) {
+        long delay = retryBackoffMs << Math.min(attempt - 1, 20);
+        return Math.max(0, Math.min(delay, Math.min(retryBackoffMaxMs, visibilityTimeoutMs / 2)));
+    }
+
+    /**
+     * 延迟到期后重新入队并确认原消息
+     */
+    private void requeue(StreamMessageId messageId, Map<String, String> fields) {
+        try {
+            stream().add(StreamAddArgs.entries(fields));
+            acknowledge(messageId);
+        } catch (Exception e) {
+            // 原消息未确认，可见性超时后由其他节点接管
+            log.error("入库子任务重新入队失败 jobId={} file={}", fields.get(FIELD_JOB_ID), fields.get(FIELD_FILENAME), e);
+        }
+    }
+
+    /**
+     * 子任务的来源信息
+     */
+    private static ChunkUpserter.Origin origin(Map<String, String> fields) {
+        return new ChunkUpserter.Origin(fields.get(FIELD_FILENAME), fields.get(FIELD_REPO_COMMIT),
+                Long.parseLong(fields.get(FIELD_UPLOADED_AT)));
+    }
+
+    /**
+     * 子任务结束：完成集合去重后更新计数并推进完成屏障
+     */
+    private void finish(String jobId, String taskId, boolean success, int chunks) {
+        RSet<String> finished = redissonClient.getSet(JOB_KEY_PREFIX + jobId + ":finished", StringCodec.INSTANCE);
+        if (!finished.add(taskId)) return;
+        finished.expire(Duration.ofHours(ttlHours));
+
+        RMap<String, Long> counters = counters(jobId);
+        counters.addAndGet(success ? COUNTER_COMPLETED : COUNTER_FAILED, 1L);
+        if (chunks > 0) counters.addAndGet(COUNTER_CHUNKS, (long) chunks);
+
+        RCountDownLatch latch = redissonClient.getCountDownLatch(JOB_KEY_PREFIX + jobId + ":latch");
+        latch.countDown();
+
+        redissonClient.getBucket(BLOB_KEY_PREFIX + taskId, ByteArrayCodec.INSTANCE).delete();
+    }
+
+    private void acknowledge(StreamMessageId messageId) {
+        stream().ack(GROUP, messageId);
+        stream().remove(messageId);
+    }
+
+    private RStream<String, String> stream() {
+        return redissonClient.getStream(STREAM_KEY, StringCodec.INSTANCE);
+    }
+
+    private RMap<String, Long> counters(String jobId) {
+        return redissonClient.getMap(JOB_KEY_PREFIX + jobId + ":counters", COUNTER_CODEC);
+    }
+
+    private static String nodeName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "node";
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
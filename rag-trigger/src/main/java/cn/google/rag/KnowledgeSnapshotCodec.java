@@ -0,0 +1,275 @@
+package cn.google.rag;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 知识库二进制快照格式
+ * <p>
+ * 文件头：魔数 RAGSNAP1、格式版本、知识库标签、向量维度、导出时间。
+ * 之后为若干数据块，每块最多 {@link #BLOCK_ROWS} 行，列式存放：
+ * <pre>
+ * int    rows                      （0 表示结束，之后跟 long 总行数）
+ * long[] ids                       （每行 msb + lsb）
+ * float[] vectors                  （rows * dims，小端 float32，可直接整块读入）
+ * int    rawTextLength, int compressedTextLength, byte[] deflate(text)
+ *                                  （text 为每行 int 长度前缀的 UTF-8 content 与 metadata JSON）
+ * long   crc32                     （覆盖 ids、vectors、未压缩 text）
+ * </pre>
+ * 导入时不需要调用任何模型。读取时校验行数、维度与各长度字段的范围，文件截断时抛出 EOFException，
+ * 不按文件中的长度字段预先分配内存。
+ *
+ */
+public final class KnowledgeSnapshotCodec {
+
+    public static final byte[] MAGIC = "RAGSNAP1".getBytes(StandardCharsets.US_ASCII);
+    public static final int FORMAT_VERSION = 1;
+    public static final int BLOCK_ROWS = 4096;
+    /** 向量维度上限 */
+    public static final int MAX_DIMENSIONS = 16000;
+    /** 单块文本（未压缩）的字节数上限 */
+    public static final int MAX_BLOCK_TEXT_BYTES = 256 * 1024 * 1024;
+    /** 文件头中知识库标签的字节数上限 */
+    private static final int MAX_TAG_BYTES = 1024;
+
+    private KnowledgeSnapshotCodec() {
+    }
+
+    /**
+     * 快照中的一行
+     */
+    public record Row(UUID id, String content, String metadataJson, float[] embedding) {
+    }
+
+    /**
+     * 快照文件头
+     */
+    public record Header(String ragTag, int dimensions, long createdAt) {
+    }
+
+    /**
+     * 快照写入器，按块缓冲后写出
+     */
+    public static final class Writer implements AutoCloseable {
+
+        private final DataOutputStream out;
+        private final int dimensions;
+        private final List<Row> buffer = new ArrayList<>(BLOCK_ROWS);
+        private long total;
+
+        public Writer(OutputStream outputStream, String ragTag, int dimensions) throws IOException {
+            this.out = new DataOutputStream(outputStream);
+            this.dimensions = dimensions;
+            out.write(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, ragTag);
+            out.writeInt(dimensions);
+            out.writeLong(System.currentTimeMillis());
+        }
+
+        public void write(Row row) throws IOException {
+            if (row.embedding().length != dimensions) {
+                throw new IOException("向量维度不一致 id=" + row.id() + " expected=" + dimensions + " actual=" + row.embedding().length);
+            }
+            buffer.add(row);
+            if (buffer.size() == BLOCK_ROWS) flushBlock();
+        }
+
+        public long total() {
+            return total;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushBlock();
+            out.writeInt(0);
+            out.writeLong(total);
+            out.flush();
+        }
+
+        private void flushBlock() throws IOException {
+            if (buffer.isEmpty()) return;
+            int rows = buffer.size();
+
+            ByteBuffer ids = ByteBuffer.allocate(rows * 16);
+            ByteBuffer vectors = ByteBuffer.allocate(rows * dimensions * 4).order(ByteOrder.LITTLE_ENDIAN);
+            ByteArrayOutputStream text = new ByteArrayOutputStream(rows * 256);
+            DataOutputStream textOut = new DataOutputStream(text);
+            FloatBuffer vectorView = vectors.asFloatBuffer();
+            for (Row row : buffer) {
+                ids.putLong(row.id().getMostSignificantBits()).putLong(row.id().getLeastSignificantBits());
+                vectorView.put(row.embedding());
+                writeString(textOut, row.content());
+                writeString(textOut, row.metadataJson());
+            }
+            byte[] rawText = text.toByteArray();
+            byte[] compressed = deflate(rawText);
+
+            CRC32 crc = new CRC32();
+            crc.update(ids.array());
+            crc.update(vectors.array());
+            crc.update(rawText);
+
+            out.writeInt(rows);
+            out.write(ids.array());
+            out.write(vectors.array());
+            out.writeInt(rawText.length);
+            out.writeInt(compressed.length);
+            out.write(compressed);
+            out.writeLong(crc.getValue());
+
+            total += rows;
+            buffer.clear();
+        }
+
+    }
+
+    /**
+     * 快照读取器，逐块读出并校验
+     */
+    public static final class Reader {
+
+        private final DataInputStream in;
+        private final Header header;
+        private long total;
+
+        public Reader(InputStream inputStream) throws IOException {
+            this.in = new DataInputStream(inputStream);
+            byte[] magic = in.readNBytes(MAGIC.length);
+            if (!Arrays.equals(MAGIC, magic)) throw new IOException("不是知识库快照文件");
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) throw new IOException("不支持的快照版本:" + version);
+            String ragTag = readString(in, MAX_TAG_BYTES);
+            int dimensions = in.readInt();
+            // 空知识库导出的快照维度为 0
+            if (dimensions < 0 || dimensions > MAX_DIMENSIONS) throw new IOException("快照向量维度不合法:" + dimensions);
+            this.header = new Header(ragTag, dimensions, in.readLong());
+        }
+
+        public Header header() {
+            return header;
+        }
+
+        /**
+         * 读取下一块
+         *
+         * @return 块内的行，读到结束标记时返回 null
+         */
+        public List<Row> nextBlock() throws IOException {
+            int rows = in.readInt();
+            if (rows == 0) {
+                long expected = in.readLong();
+                if (expected != total) throw new IOException("快照行数校验失败 expected=" + expected + " actual=" + total);
+                return null;
+            }
+            int dimensions = header.dimensions();
+            if (rows < 0 || rows > BLOCK_ROWS) throw new IOException("快照数据块行数不合法:" + rows);
+            if (dimensions == 0) throw new IOException("快照向量维度为 0，但包含数据块");
+            byte[] ids = readFully(in, Math.multiplyExact(rows, 16));
+            byte[] vectors = readFully(in, Math.multiplyExact(Math.multiplyExact(rows, dimensions), 4));
+            int rawLength = in.readInt();
+            int compressedLength = in.readInt();
+            if (rawLength < 0 || rawLength > MAX_BLOCK_TEXT_BYTES) throw new IOException("快照文本块长度不合法:" + rawLength);
+            if (compressedLength < 0 || compressedLength > MAX_BLOCK_TEXT_BYTES) throw new IOException("快照文本块压缩长度不合法:" + compressedLength);
+            byte[] rawText = inflate(readFully(in, compressedLength), rawLength);
+            long checksum = in.readLong();
+
+            CRC32 crc = new CRC32();
+            crc.update(ids);
+            crc.update(vectors);
+            crc.update(rawText);
+            if (crc.getValue() != checksum) throw new IOException("快照数据块校验失败，文件可能已损坏");
+
+            ByteBuffer idBuffer = ByteBuffer.wrap(ids);
+            FloatBuffer vectorBuffer = ByteBuffer.wrap(vectors).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            DataInputStream textIn = new DataInputStream(new ByteArrayInputStream(rawText));
+            List<Row> result = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                UUID id = new UUID(idBuffer.getLong(), idBuffer.getLong());
+                float[] embedding = new float[dimensions];
+                vectorBuffer.get(embedding);
+                result.add(new Row(id, readString(textIn, rawText.length), readString(textIn, rawText.length), embedding));
+            }
+            total += rows;
+            return result;
+        }
+
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, int maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxLength) throw new IOException("快照字符串长度不合法:" + length);
+        return new String(readFully(in, length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取指定字节数，文件提前结束时抛出 EOFException；按实际读到的数据逐步分配，不按长度字段预先分配
+     */
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) throw new EOFException("快照文件不完整");
+        return bytes;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 3));
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            // 按解压出的数据增长，长度字段只用于校验
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(Math.min(rawLength, 64 * 1024));
+            byte[] buffer = new byte[64 * 1024];
+            while (raw.size() < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(buffer, 0, Math.min(buffer.length, rawLength - raw.size()));
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                raw.write(buffer, 0, n);
+            }
+            if (raw.size() != rawLength) throw new IOException("快照文本块解压失败");
+            return raw.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("快照文本块解压失败", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package cn.google.rag;
+
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 知识库快照命令行入口
+ * <p>
+ * 启动参数中带有快照选项时，执行导出或导入后退出进程：
+ * <pre>
+ * --snapshot.export=&lt;ragTag&gt; --snapshot.file=&lt;path&gt;
+ * --snapshot.import=&lt;path&gt; [--snapshot.rag-tag=&lt;ragTag&gt;] [--snapshot.target=pg|memory]
+ * </pre>
+ * 导出与导入 PostgreSQL 完成后退出进程，建议同时传入 --spring.main.web-application-type=none --rag.ingest.workers=0，
+ * 不启动 Web 服务与入库消费；导入内存向量存储（target=memory）时装载完成后继续提供服务，用于新节点快速预热。
+ *
+ */
+@Slf4j
+@Component
+public class KnowledgeSnapshotCommand implements ApplicationRunner {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    @Resource
+    private KnowledgeSnapshotService knowledgeSnapshotService;
+    @Resource
+    private ConfigurableApplicationContext applicationContext;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        String exportTag = option(args, "snapshot.export");
+        String importFile = option(args, "snapshot.import");
+        if (exportTag == null && importFile == null) return;
+
+        KnowledgeSnapshotService.Target target = KnowledgeSnapshotService.Target.of(option(args, "snapshot.target"));
+        int exitCode = 0;
+        try {
+            if (exportTag != null) {
+                String file = option(args, "snapshot.file");
+                Path path = Path.of(file == null ? exportTag + ".ragsnap" : file);
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE)) {
+                    long rows = knowledgeSnapshotService.export(exportTag, out);
+                    log.info("快照已写入 {} rows={}", path.toAbsolutePath(), rows);
+                }
+            } else {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(Path.of(importFile)), BUFFER_SIZE)) {
+                    KnowledgeSnapshotService.ImportResult result = knowledgeSnapshotService.importSnapshot(in,
+                            option(args, "snapshot.rag-tag"), target);
+                    log.info("快照已导入 {}", result);
+                }
+                if (target == KnowledgeSnapshotService.Target.MEMORY) return;
+            }
+        } catch (Exception e) {
+            log.error("快照命令执行失败", e);
+            exitCode = 1;
+        }
+
+        int code = exitCode;
+        System.exit(SpringApplication.exit(applicationContext, () -> code));
+    }
+
+    private static String option(ApplicationArguments args, String name) {
+        List<String> values = args.getOptionValues(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+}
@@ -0,0 +1,257 @@
+package cn.google.rag;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.PgVectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 知识库快照导出与导入
+ * <p>
+ * 导出按 ID 键集分页读取某个知识库的片段、元数据和向量，写成 {@link KnowledgeSnapshotCodec} 格式；
+ * 导入直接以 JDBC 批量写入 PostgreSQL（INSERT ... ON CONFLICT），或装载进内存向量存储，全程不调用嵌入模型。
+ * 适用于在 dev / test / prod 之间迁移知识库，以及新节点快速预热。
+ *
+ */
+@Slf4j
+@Component
+public class KnowledgeSnapshotService {
+
+    private static final String TABLE = PgVectorStore.VECTOR_TABLE_NAME;
+    private static final int PAGE_SIZE = 1000;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private PreloadableSimpleVectorStore vectorStore;
+    @Resource
+    private RagTagRegistry ragTagRegistry;
+    @Resource
+    private EmbeddingMigration embeddingMigration;
+    @Resource
+    private EmbeddingRoutes embeddingRoutes;
+
+    /**
+     * 导入目标
+     */
+    public enum Target {
+        /** PostgreSQL 向量表 */
+        PG,
+        /** 进程内的内存向量存储 */
+        MEMORY;
+
+        public static Target of(String value) {
+            return value == null || value.isBlank() ? PG : Target.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * 导入结果
+     *
+     * @param ragTag    写入的知识库标签
+     * @param rows      写入的片段数
+     * @param sources   涉及的来源数
+     * @param elapsedMs 耗时
+     */
+    public record ImportResult(String ragTag, long rows, long sources, long elapsedMs) {
+    }
+
+    /**
+     * 导出知识库快照
+     *
+     * @param ragTag 知识库标签
+     * @param out    输出流，调用方负责关闭
+     * @return 导出的片段数
+     */
+    public long export(String ragTag, OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        // 按检索路由导出：切换嵌入模型期间，已切换的知识库导出影子表中的新模型向量
+        String table = embeddingRoutes.route(ragTag).table();
+        int dimensions = vectorDimensions(table);
+        if (dimensions == 0) {
+            // 向量列未声明维度时以该知识库第一行为准
+            List<Integer> dims = jdbcTemplate.queryForList(
+                    "SELECT vector_dims(embedding) FROM " + table + " WHERE metadata->>'knowledge' = ? LIMIT 1", Integer.class, ragTag);
+            dimensions = dims.isEmpty() ? 0 : dims.get(0);
+        }
+        KnowledgeSnapshotCodec.Writer writer = new KnowledgeSnapshotCodec.Writer(out, ragTag, dimensions);
+        String lastId = "00000000-0000-0000-0000-000000000000";
+        while (true) {
+            List<KnowledgeSnapshotCodec.Row> page = jdbcTemplate.query(
+                    "SELECT id::text AS id, content, metadata::text AS metadata, embedding::text AS embedding FROM " + table +
+                            " WHERE metadata->>'knowledge' = ? AND id > ?::uuid ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> new KnowledgeSnapshotCodec.Row(
+                            UUID.fromString(rs.getString("id")),
+                            rs.getString("content"),
+                            rs.getString("metadata"),
+                            parseVector(rs.getString("embedding"))),
+                    ragTag, lastId, PAGE_SIZE);
+            for (KnowledgeSnapshotCodec.Row row : page) {
+                writer.write(row);
+            }
+            if (page.size() < PAGE_SIZE) break;
+            lastId = page.get(page.size() - 1).id().toString();
+        }
+        writer.close();
+        log.info("知识库快照导出完成 ragTag={} rows={} elapsedMs={}", ragTag, writer.total(), System.currentTimeMillis() - start);
+        return writer.total();
+    }
+
+    /**
+     * 导入知识库快照
+     *
+     * @param in           快照输入流，调用方负责关闭
+     * @param targetRagTag 导入后的知识库标签，为空时沿用快照中的标签；与快照标签不同时按新标签重新生成片段ID
+     * @param target       导入目标
+     * @return 导入结果
+     */
+    public ImportResult importSnapshot(InputStream in, String targetRagTag, Target target) throws IOException {
+        long start = System.currentTimeMillis();
+        KnowledgeSnapshotCodec.Reader reader = new KnowledgeSnapshotCodec.Reader(in);
+        KnowledgeSnapshotCodec.Header header = reader.header();
+        String ragTag = targetRagTag == null || targetRagTag.isBlank() ? header.ragTag() : targetRagTag;
+        boolean retag = !ragTag.equals(header.ragTag());
+
+        if (target == Target.PG) {
+            int dimensions = vectorDimensions(TABLE);
+            if (dimensions > 0 && header.dimensions() > 0 && dimensions != header.dimensions()) {
+                throw new IOException("快照向量维度 " + header.dimensions() + " 与向量表维度 " + dimensions + " 不一致");
+            }
+        } else if (header.dimensions() > 0 && header.dimensions() != vectorStore.dimensions()) {
+            // 内存存储以本节点的嵌入模型向量化查询，维度不一致时无法检索
+            throw new IOException("快照向量维度 " + header.dimensions() + " 与嵌入模型维度 " + vectorStore.dimensions() + " 不一致");
+        }
+
+        long rows = 0;
+        Set<String> sources = new HashSet<>();
+        List<KnowledgeSnapshotCodec.Row> block;
+        while ((block = reader.nextBlock()) != null) {
+            List<KnowledgeSnapshotCodec.Row> prepared = new ArrayList<>(block.size());
+            for (KnowledgeSnapshotCodec.Row row : block) {
+                Map<String, Object> metadata = OBJECT_MAPPER.readValue(row.metadataJson(), METADATA_TYPE);
+                Object source = metadata.get(ChunkUpserter.METADATA_SOURCE);
+                sources.add(source == null ? "" : source.toString());
+                if (retag) {
+                    metadata.put(ChunkUpserter.METADATA_KNOWLEDGE, ragTag);
+                    String id = ChunkUpserter.chunkId(ragTag, source == null ? null : source.toString(), row.content());
+                    row = new KnowledgeSnapshotCodec.Row(UUID.fromString(id), row.content(), OBJECT_MAPPER.writeValueAsString(metadata), row.embedding());
+                }
+                prepared.add(row);
+            }
+            if (target == Target.PG) {
+                insertBlock(prepared);
+            } else {
+                vectorStore.preload(toDocuments(prepared));
+            }
+            rows += prepared.size();
+        }
+
+        ragTagRegistry.register(ragTag);
+        if (target == Target.PG) {
+            // 导入为 upsert，重复导入同一快照不增加片段；统计信息按向量表重新统计后覆盖，而不是累加
+            Map<String, Object> totals = jdbcTemplate.queryForMap(
+                    "SELECT count(DISTINCT metadata->>'source') AS documents, count(*) AS chunks, coalesce(sum(octet_length(content)), 0) AS bytes" +
+                            " FROM " + TABLE + " WHERE metadata->>'knowledge' = ?", ragTag);
+            ragTagRegistry.resetIngestion(ragTag, ((Number) totals.get("documents")).longValue(),
+                    ((Number) totals.get("chunks")).longValue(), ((Number) totals.get("bytes")).longValue());
+            embeddingMigration.mirror(ragTag, null);
+        }
+
+        ImportResult result = new ImportResult(ragTag, rows, sources.size(), System.currentTimeMillis() - start);
+        log.info("知识库快照导入完成 target={} {}", target, result);
+        return result;
+    }
+
+    private void insertBlock(List<KnowledgeSnapshotCodec.Row> rows) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO " + TABLE + " (id, content, metadata, embedding) VALUES (?::uuid, ?, ?::jsonb, ?::vector) " +
+                        "ON CONFLICT (id) DO UPDATE SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding",
+                rows, rows.size(),
+                (ps, row) -> {
+                    ps.setString(1, row.id().toString());
+                    ps.setString(2, row.content());
+                    ps.setString(3, row.metadataJson());
+                    ps.setString(4, formatVector(row.embedding()));
+                });
+    }
+
+    private static List<Document> toDocuments(List<KnowledgeSnapshotCodec.Row> rows) {
+        List<Document> documents = new ArrayList<>(rows.size());
+        for (KnowledgeSnapshotCodec.Row row : rows) {
+            Map<String, Object> metadata;
+            try {
+                metadata = new HashMap<>(OBJECT_MAPPER.readValue(row.metadataJson(), METADATA_TYPE));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Document document = new Document(row.id().toString(), row.content(), metadata);
+            List<Double> embedding = new ArrayList<>(row.embedding().length);
+            for (float value : row.embedding()) {
+                embedding.add((double) value);
+            }
+            document.setEmbedding(embedding);
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    /**
+     * 向量列声明的维度，pgvector 以 atttypmod 记录；表不存在或未声明维度时返回 0
+     */
+    private int vectorDimensions(String table) {
+        List<Integer> typmod = jdbcTemplate.queryForList(
+                "SELECT atttypmod FROM pg_attribute WHERE attrelid = to_regclass(?) AND attname = 'embedding'",
+                Integer.class, table);
+        return typmod.isEmpty() || typmod.get(0) == null ? 0 : Math.max(0, typmod.get(0));
+    }
+
+    /**
+     * 解析 pgvector 文本格式 [v1,v2,...]
+     */
+    static float[] parseVector(String text) {
+        int end = text.length() - 1;
+        if (end <= 1) return new float[0];
+        int count = 1;
+        for (int i = 1; i < end; i++) {
+            if (text.charAt(i) == ',') count++;
+        }
+        float[] vector = new float[count];
+        int from = 1;
+        for (int i = 0; i < count; i++) {
+            int to = text.indexOf(',', from);
+            if (to < 0 || to > end) to = end;
+            vector[i] = Float.parseFloat(text.substring(from, to).trim());
+            from = to + 1;
+        }
+        return vector;
+    }
+
+    static String formatVector(float[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 10 + 2).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+}
@@ -0,0 +1,200 @@
+package cn.google.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 进程内向量存储的元数据位图索引
+ * <p>
+ * 每个文档占一个槽位，每个（元数据键, 取值）对应一个 BitSet。过滤表达式按位运算求出候选槽位，
+ * 相似度只对候选文档计算，过滤后的检索耗时与命中文档数成正比，而不是与全部文档数成正比。
+ * 支持 Filter.Expression 的全部运算；范围比较遍历该键的取值字典，不逐个文档比较。
+ *
+ */
+public class MetadataBitmapIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Document> slots = new ArrayList<>();
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private final BitSet live = new BitSet();
+    private final BitSet free = new BitSet();
+    private final Map<String, Map<Object, BitSet>> postings = new HashMap<>();
+
+    /**
+     * 写入文档，同ID覆盖
+     */
+    public void put(Document document) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = slotById.get(document.getId());
+            if (existing != null) unindex(existing);
+            int slot = free.isEmpty() ? slots.size() : free.nextSetBit(0);
+            if (slot == slots.size()) slots.add(document);
+            else slots.set(slot, document);
+            free.clear(slot);
+            live.set(slot);
+            slotById.put(document.getId(), slot);
+            for (Map.Entry<String, Object> entry : document.getMetadata().entrySet()) {
+                Object value = normalize(entry.getValue());
+                if (value == null) continue;
+                postings.computeIfAbsent(entry.getKey(), key -> new HashMap<>())
+                        .computeIfAbsent(value, key -> new BitSet())
+                        .set(slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotById.remove(id);
+            if (slot != null) unindex(slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            slots.clear();
+            slotById.clear();
+            live.clear();
+            free.clear();
+            postings.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 满足过滤条件的文档
+     */
+    public List<Document> select(Filter.Expression expression) {
+        lock.readLock().lock();
+        try {
+            BitSet matched = evaluate(expression);
+            List<Document> documents = new ArrayList<>(matched.cardinality());
+            for (int slot = matched.nextSetBit(0); slot >= 0; slot = matched.nextSetBit(slot + 1)) {
+                documents.add(slots.get(slot));
+            }
+            return documents;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void unindex(int slot) {
+        Document document = slots.get(slot);
+        for (Map.Entry<String, Object> entry : document.getMetadata().entrySet()) {
+            Map<Object, BitSet> values = postings.get(entry.getKey());
+            Object value = normalize(entry.getValue());
+            if (values == null || value == null) continue;
+            BitSet bits = values.get(value);
+            if (bits == null) continue;
+            bits.clear(slot);
+            if (bits.isEmpty()) values.remove(value);
+            if (values.isEmpty()) postings.remove(entry.getKey());
+        }
+        slots.set(slot, null);
+        live.clear(slot);
+        free.set(slot);
+    }
+
+    /**
+     * 求值，返回的 BitSet 均为新对象，可直接修改
+     */
+    private BitSet evaluate(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) return evaluate(group.content());
+        if (!(operand instanceof Filter.Expression expression)) {
+            throw new IllegalArgumentException("不支持的过滤条件 " + operand);
+        }
+        return switch (expression.type()) {
+            case AND -> {
+                BitSet left = evaluate(expression.left());
+                left.and(evaluate(expression.right()));
+                yield left;
+            }
+            case OR -> {
+                BitSet left = evaluate(expression.left());
+                left.or(evaluate(expression.right()));
+                yield left;
+            }
+            case NOT -> complement(evaluate(expression.left()));
+            case EQ -> equalTo(key(expression), value(expression));
+            case NE -> complement(equalTo(key(expression), value(expression)));
+            case IN -> anyOf(key(expression), (List<?>) value(expression));
+            case NIN -> complement(anyOf(key(expression), (List<?>) value(expression)));
+            case GT, GTE, LT, LTE -> range(expression);
+        };
+    }
+
+    private BitSet equalTo(String key, Object value) {
+        Map<Object, BitSet> values = postings.get(key);
+        BitSet bits = values == null ? null : values.get(normalize(value));
+        return bits == null ? new BitSet() : (BitSet) bits.clone();
+    }
+
+    private BitSet anyOf(String key, List<?> values) {
+        BitSet result = new BitSet();
+        for (Object value : values) {
+            result.or(equalTo(key, value));
+        }
+        return result;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private BitSet range(Filter.Expression expression) {
+        BitSet result = new BitSet();
+        Map<Object, BitSet> values = postings.get(key(expression));
+        if (values == null) return result;
+        Object bound = normalize(value(expression));
+        for (Map.Entry<Object, BitSet> entry : values.entrySet()) {
+            // 只比较同类型的取值（数字与数字、字符串与字符串）
+            if (bound == null || entry.getKey().getClass() != bound.getClass()) continue;
+            int cmp = ((Comparable) entry.getKey()).compareTo(bound);
+            boolean matched = switch (expression.type()) {
+                case GT -> cmp > 0;
+                case GTE -> cmp >= 0;
+                case LT -> cmp < 0;
+                default -> cmp <= 0;
+            };
+            if (matched) result.or(entry.getValue());
+        }
+        return result;
+    }
+
+    private BitSet complement(BitSet bits) {
+        BitSet result = (BitSet) live.clone();
+        result.andNot(bits);
+        return result;
+    }
+
+    private static String key(Filter.Expression expression) {
+        return ((Filter.Key) expression.left()).key();
+    }
+
+    private static Object value(Filter.Expression expression) {
+        return ((Filter.Value) expression.right()).value();
+    }
+
+    /**
+     * 数字统一为 Double：元数据从 JSON 反序列化后可能是 Integer 或 Long，过滤值也可能是任意数字类型
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Number number) return number.doubleValue();
+        if (value instanceof String || value instanceof Boolean) return value;
+        return null;
+    }
+
+}
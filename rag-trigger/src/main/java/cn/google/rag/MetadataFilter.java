@@ -0,0 +1,234 @@
+package cn.google.rag;
+
+import cn.google.request.RagFilter;
+import org.springframework.ai.vectorstore.PgVectorFilterExpressionConverter;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 类型化的片段元数据过滤条件，多个条件之间为 AND
+ * <p>
+ * 代替在检索处拼接 "knowledge == '...'" 字符串：
+ * <ul>
+ *     <li>不再经过 FilterExpressionTextParser，每次请求不必重新解析过滤表达式</li>
+ *     <li>条件相同的过滤器共享同一份编译结果（Filter.Expression），缓存在进程内</li>
+ *     <li>PgVectorStore 会把过滤条件转换成 jsonpath 后直接拼进 SQL 字符串字面量，字符串值中的引号与反斜杠
+ *     由 {@link #pgVectorExpression()} 转义，知识库标签等用户输入无法改变查询结构</li>
+ * </ul>
+ * 用法：{@code MetadataFilter.knowledge(ragTag).in(ChunkUpserter.METADATA_FILE_TYPE, List.of("java", "md"))}，
+ * 接口传入的 {@link RagFilter} 通过 {@link #and(RagFilter)} 转换为同样的条件。
+ * 检索入口接收 MetadataFilter 本身而不是编译后的表达式，按目标存储分别取 {@link #expression()} 或 {@link #pgVectorExpression()}。
+ *
+ */
+public final class MetadataFilter {
+
+    /** 编译结果缓存上限，超过后整体清空（过滤条件的组合数通常很少） */
+    private static final int MAX_CACHED_PLANS = 1024;
+    private static final Map<List<Condition>, Plan> PLANS = new ConcurrentHashMap<>();
+    private static final PgVectorFilterExpressionConverter PG_VECTOR_CONVERTER = new PgVectorFilterExpressionConverter();
+
+    /** 元数据键会出现在 jsonpath 中（$.key），只允许标识符 */
+    private static final Pattern KEY_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final List<Condition> conditions;
+
+    private MetadataFilter(List<Condition> conditions) {
+        this.conditions = conditions;
+    }
+
+    /**
+     * 比较方式
+     */
+    public enum Operator {
+        EQ, IN, GTE, LTE
+    }
+
+    /**
+     * 单个条件
+     *
+     * @param key      元数据键
+     * @param operator 比较方式
+     * @param values   比较值，IN 时为多个，其余为一个
+     */
+    public record Condition(String key, Operator operator, List<Object> values) {
+    }
+
+    /**
+     * 编译结果
+     *
+     * @param expression         原始值的过滤表达式，用于进程内向量存储
+     * @param pgVectorExpression 字符串值已转义的过滤表达式，用于 PgVectorStore
+     * @param pgVectorJsonPath   pgVectorExpression 转换成的 jsonpath，用于自行拼接 SQL 的检索
+     */
+    private record Plan(Filter.Expression expression, Filter.Expression pgVectorExpression, String pgVectorJsonPath) {
+    }
+
+    /**
+     * 限定知识库
+     */
+    public static MetadataFilter knowledge(String ragTag) {
+        return new MetadataFilter(List.of()).eq(ChunkUpserter.METADATA_KNOWLEDGE, ragTag);
+    }
+
+    /**
+     * 不含任何条件的过滤器，用于只携带接口传入的附加条件
+     */
+    public static MetadataFilter none() {
+        return new MetadataFilter(List.of());
+    }
+
+    /**
+     * 追加接口传入的过滤条件，为 null 或各项均为空时返回自身
+     */
+    public MetadataFilter and(RagFilter filter) {
+        if (filter == null) return this;
+        MetadataFilter result = this;
+        if (filter.getSource() != null && !filter.getSource().isBlank()) {
+            result = result.eq(ChunkUpserter.METADATA_SOURCE, filter.getSource());
+        }
+        if (filter.getFileTypes() != null) {
+            List<String> fileTypes = filter.getFileTypes().stream()
+                    .filter(type -> type != null && !type.isBlank())
+                    .map(type -> type.trim().toLowerCase())
+                    .distinct()
+                    .toList();
+            if (!fileTypes.isEmpty()) result = result.in(ChunkUpserter.METADATA_FILE_TYPE, fileTypes);
+        }
+        if (filter.getRepoCommit() != null && !filter.getRepoCommit().isBlank()) {
+            result = result.eq(ChunkUpserter.METADATA_REPO_COMMIT, filter.getRepoCommit());
+        }
+        if (filter.getIngestedAfter() != null) result = result.gte(ChunkUpserter.METADATA_INGESTED_AT, filter.getIngestedAfter());
+        if (filter.getIngestedBefore() != null) result = result.lte(ChunkUpserter.METADATA_INGESTED_AT, filter.getIngestedBefore());
+        return result;
+    }
+
+    public MetadataFilter eq(String key, Object value) {
+        return with(key, Operator.EQ, List.of(value));
+    }
+
+    public MetadataFilter in(String key, Collection<?> values) {
+        if (values.isEmpty()) throw new IllegalArgumentException("IN 条件至少需要一个值 key=" + key);
+        return with(key, Operator.IN, List.copyOf(values));
+    }
+
+    public MetadataFilter gte(String key, Number value) {
+        return with(key, Operator.GTE, List.of(value));
+    }
+
+    public MetadataFilter lte(String key, Number value) {
+        return with(key, Operator.LTE, List.of(value));
+    }
+
+    public List<Condition> conditions() {
+        return conditions;
+    }
+
+    public boolean isEmpty() {
+        return conditions.isEmpty();
+    }
+
+    /**
+     * 限定的知识库标签，即 knowledge 的 EQ 条件；没有时抛出 IllegalArgumentException
+     */
+    public String knowledgeTag() {
+        for (Condition condition : conditions) {
+            if (ChunkUpserter.METADATA_KNOWLEDGE.equals(condition.key()) && condition.operator() == Operator.EQ) {
+                return String.valueOf(condition.values().get(0));
+            }
+        }
+        throw new IllegalArgumentException("过滤条件未限定知识库 " + conditions);
+    }
+
+    /**
+     * 过滤表达式，用于进程内向量存储（见 {@link PreloadableSimpleVectorStore}）
+     */
+    public Filter.Expression expression() {
+        return plan().expression();
+    }
+
+    /**
+     * 过滤表达式，用于 PgVectorStore
+     */
+    public Filter.Expression pgVectorExpression() {
+        return plan().pgVectorExpression();
+    }
+
+    /**
+     * jsonpath 形式的过滤条件，字符串值已转义，可直接拼入 SQL 字面量：{@code metadata::jsonb @@ '<jsonpath>'::jsonpath}
+     */
+    public String pgVectorJsonPath() {
+        return plan().pgVectorJsonPath();
+    }
+
+    private MetadataFilter with(String key, Operator operator, List<Object> values) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) throw new IllegalArgumentException("非法的元数据键 " + key);
+        for (Object value : values) {
+            if (!(value instanceof String || value instanceof Number || value instanceof Boolean)) {
+                throw new IllegalArgumentException("元数据过滤值只支持字符串、数字与布尔值 key=" + key + " value=" + value);
+            }
+        }
+        List<Condition> next = new ArrayList<>(conditions.size() + 1);
+        next.addAll(conditions);
+        next.add(new Condition(key, operator, values));
+        return new MetadataFilter(List.copyOf(next));
+    }
+
+    private Plan plan() {
+        if (conditions.isEmpty()) throw new IllegalStateException("过滤条件为空");
+        Plan plan = PLANS.get(conditions);
+        if (plan != null) return plan;
+        if (PLANS.size() >= MAX_CACHED_PLANS) PLANS.clear();
+        return PLANS.computeIfAbsent(conditions, key -> {
+            Filter.Expression pgVectorExpression = compile(key, true);
+            return new Plan(compile(key, false), pgVectorExpression, PG_VECTOR_CONVERTER.convertExpression(pgVectorExpression));
+        });
+    }
+
+    private static Filter.Expression compile(List<Condition> conditions, boolean escape) {
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        FilterExpressionBuilder.Op result = null;
+        for (Condition condition : conditions) {
+            List<Object> values = escape ? condition.values().stream().map(MetadataFilter::escape).toList() : condition.values();
+            FilterExpressionBuilder.Op op = switch (condition.operator()) {
+                case EQ -> b.eq(condition.key(), values.get(0));
+                case IN -> b.in(condition.key(), values);
+                case GTE -> b.gte(condition.key(), values.get(0));
+                case LTE -> b.lte(condition.key(), values.get(0));
+            };
+            result = result == null ? op : b.and(result, op);
+        }
+        return result.build();
+    }
+
+    /**
+     * PgVectorStore 生成 metadata::jsonb @@ '$.key == "value"'::jsonpath：
+     * 先按 jsonpath 字符串转义反斜杠与双引号，再按 SQL 字面量双写单引号
+     */
+    private static Object escape(Object value) {
+        if (!(value instanceof String text)) return value;
+        return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("'", "''");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MetadataFilter other && conditions.equals(other.conditions);
+    }
+
+    @Override
+    public int hashCode() {
+        return conditions.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return conditions.toString();
+    }
+
+}
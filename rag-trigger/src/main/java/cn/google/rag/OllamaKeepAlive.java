@@ -0,0 +1,142 @@
+package cn.google.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按模型固定 Ollama 的 keep_alive
+ * <p>
+ * Ollama 以最近一次请求携带的 keep_alive（缺省 5 分钟）决定模型何时卸载，卸载后 KV 缓存随之失效。
+ * 当前版本的 OllamaOptions 无法在对话请求中携带 keep_alive，因此在每次对话结束后异步发送一次
+ * 空 prompt 的 /api/generate（只加载模型、不做推理），把过期时间重新设为配置值。
+ * 同一模型同时只有一个设置请求在途，期间到达的设置合并为在途请求结束后的一次。
+ * 模型名来自请求参数，只为登记的模型（rag.session.keep-alive-models 与 keep-alive-overrides 中出现的模型）设置，
+ * 其余忽略，在途计数表的大小因此有界。
+ *
+ */
+@Slf4j
+@Component
+public class OllamaKeepAlive {
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    /** 每个模型待处理的设置次数，大于 0 表示有请求在途 */
+    private final Map<String, AtomicInteger> pending = new ConcurrentHashMap<>();
+    private final URI generateUri;
+    private final String defaultKeepAlive;
+    private final Map<String, String> overrides;
+    private final Set<String> models;
+
+    /**
+     * @param baseUrl          Ollama服务的基础URL
+     * @param defaultKeepAlive 默认 keep_alive，如 30m、1h，-1 表示常驻
+     * @param overrides        按模型覆盖，格式 model=keepAlive，逗号分隔
+     * @param models           需要设置 keep_alive 的模型，逗号分隔
+     */
+    public OllamaKeepAlive(@Value("${spring.ai.ollama.base-url}") String baseUrl,
+                           @Value("${rag.session.keep-alive:30m}") String defaultKeepAlive,
+                           @Value("${rag.session.keep-alive-overrides:}") String overrides,
+                           @Value("${rag.session.keep-alive-models:${rag.warmup.ollama-models:}}") String models) {
+        this.generateUri = URI.create(baseUrl.replaceAll("/+$", "") + "/api/generate");
+        this.defaultKeepAlive = defaultKeepAlive;
+        this.overrides = parseOverrides(overrides);
+        this.models = new HashSet<>(this.overrides.keySet());
+        Arrays.stream(models.split(",")).map(String::trim).filter(model -> !model.isEmpty()).forEach(this.models::add);
+    }
+
+    /**
+     * 为模型重新设置 keep_alive，异步执行；未登记的模型忽略
+     *
+     * @param model 模型名称
+     */
+    public void pin(String model) {
+        if (!models.contains(model)) return;
+        AtomicInteger counter = pending.computeIfAbsent(model, key -> new AtomicInteger());
+        if (counter.getAndIncrement() == 0) send(model, counter);
+    }
+
+    /**
+     * 同步加载模型并设置 keep_alive，用于启动预热
+     *
+     * @param model 模型名称
+     * @return 是否加载成功
+     */
+    public boolean preload(String model) {
+        try {
+            HttpResponse<Void> response = httpClient.send(loadRequest(model), HttpResponse.BodyHandlers.discarding());
+            return response.statusCode() == 200;
+        } catch (IOException e) {
+            log.warn("预加载 Ollama 模型失败 model={}", model, e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void send(String model, AtomicInteger counter) {
+        int covered = counter.get();
+        httpClient.sendAsync(loadRequest(model), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, e) -> {
+                    if (e != null || response.statusCode() != 200) {
+                        log.warn("设置 Ollama keep_alive 失败 model={} status={}", model, response == null ? null : response.statusCode(), e);
+                    }
+                    // 在途期间又有新的对话结束，再设置一次
+                    if (counter.addAndGet(-covered) > 0) send(model, counter);
+                });
+    }
+
+    /**
+     * 空 prompt 的 /api/generate：只加载模型并设置 keep_alive
+     */
+    private HttpRequest loadRequest(String model) {
+        String body = "{\"model\":\"" + escape(model) + "\",\"keep_alive\":" + keepAliveJson(keepAlive(model)) + "}";
+        return HttpRequest.newBuilder(generateUri)
+                .timeout(Duration.ofMinutes(2))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    /**
+     * 模型对应的 keep_alive
+     */
+    public String keepAlive(String model) {
+        return overrides.getOrDefault(model, defaultKeepAlive);
+    }
+
+    private static String keepAliveJson(String keepAlive) {
+        // 纯数字按秒处理，需以数字形式传递
+        return keepAlive.matches("-?\\d+") ? keepAlive : "\"" + escape(keepAlive) + "\"";
+    }
+
+    private static Map<String, String> parseOverrides(String overrides) {
+        Map<String, String> map = new HashMap<>();
+        if (overrides == null || overrides.isBlank()) return map;
+        for (String entry : overrides.split(",")) {
+            int index = entry.lastIndexOf('=');
+            if (index <= 0) continue;
+            map.put(entry.substring(0, index).trim(), entry.substring(index + 1).trim());
+        }
+        return map;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+}
@@ -0,0 +1,63 @@
+package cn.google.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+/**
+ * 并行批量向量化的嵌入客户端装饰器
+ * <p>
+ * Spring AI 0.8.1 的 OllamaEmbeddingClient#embed(List) 对每条文本串行发起一次 /api/embeddings 请求（并打印 WARN），
+ * 批量向量化并不比逐条调用快。这里把批量请求拆成单条请求，以 parallelism 路并发执行并按原顺序合并结果；
+ * 并发数应与 Ollama 的 OLLAMA_NUM_PARALLEL 相当。单条文本直接透传。
+ *
+ */
+public class ParallelEmbeddingClient implements EmbeddingClient {
+
+    private final EmbeddingClient delegate;
+    private final int parallelism;
+
+    public ParallelEmbeddingClient(EmbeddingClient delegate, int parallelism) {
+        this.delegate = delegate;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public List<Double> embed(String text) {
+        return delegate.embed(text);
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public List<List<Double>> embed(List<String> texts) {
+        if (texts.size() <= 1 || parallelism == 1) {
+            return texts.stream().map(delegate::embed).toList();
+        }
+        return Flux.fromIterable(texts)
+                .flatMapSequential(text -> Mono.fromCallable(() -> delegate.embed(text))
+                        .subscribeOn(Schedulers.boundedElastic()), parallelism)
+                .collectList()
+                .block();
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+}
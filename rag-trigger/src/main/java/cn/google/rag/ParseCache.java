@@ -0,0 +1,113 @@
+package cn.google.rag;
+
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 解析结果缓存，键为文件内容的 SHA-256
+ * <p>
+ * 两级：本地按字节数限制的 LRU，以及可选的 Redis（各节点共享，适配分布式入库队列）。
+ * 同一份 PDF / Office 文件重复上传或在仓库中未变化时，直接复用上次 Tika 解析出的文本。
+ *
+ */
+public class ParseCache {
+
+    private static final String KEY_PREFIX = "parse:cache:";
+    /** 解析器版本，解析逻辑变化时递增以使旧缓存失效 */
+    private static final String VERSION = "v1";
+
+    private final RedissonClient redissonClient;
+    private final long maxLocalBytes;
+    private final long maxEntryBytes;
+    private final Duration ttl;
+
+    private final LinkedHashMap<String, String> local = new LinkedHashMap<>(64, 0.75f, true);
+    private long localBytes;
+
+    /**
+     * @param redissonClient Redis 客户端，为 null 时只使用本地缓存
+     * @param maxLocalBytes  本地缓存字节上限
+     * @param maxEntryBytes  单条缓存字节上限，超过不缓存
+     * @param ttl            Redis 缓存保留时间
+     */
+    public ParseCache(RedissonClient redissonClient, long maxLocalBytes, long maxEntryBytes, Duration ttl) {
+        this.redissonClient = redissonClient;
+        this.maxLocalBytes = maxLocalBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.ttl = ttl;
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @param hash 内容哈希，见 {@link #hash(byte[])}
+     * @return 解析出的文本，未命中返回 null
+     */
+    public String get(String hash) {
+        synchronized (local) {
+            String text = local.get(hash);
+            if (text != null) return text;
+        }
+        if (redissonClient == null) return null;
+        String text = bucket(hash).get();
+        if (text != null) putLocal(hash, text);
+        return text;
+    }
+
+    /**
+     * 写入缓存
+     */
+    public void put(String hash, String text) {
+        long bytes = sizeOf(text);
+        if (bytes > maxEntryBytes) return;
+        putLocal(hash, text);
+        if (redissonClient != null) bucket(hash).set(text, ttl);
+    }
+
+    /**
+     * 文件内容哈希
+     */
+    public static String hash(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return VERSION + ":" + HexFormat.of().formatHex(digest.digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void putLocal(String hash, String text) {
+        long bytes = sizeOf(text);
+        if (bytes > maxLocalBytes) return;
+        synchronized (local) {
+            String previous = local.put(hash, text);
+            if (previous != null) localBytes -= sizeOf(previous);
+            localBytes += bytes;
+            Iterator<Map.Entry<String, String>> iterator = local.entrySet().iterator();
+            while (localBytes > maxLocalBytes && iterator.hasNext()) {
+                Map.Entry<String, String> eldest = iterator.next();
+                localBytes -= sizeOf(eldest.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private RBucket<String> bucket(String hash) {
+        return redissonClient.getBucket(KEY_PREFIX + hash, StringCodec.INSTANCE);
+    }
+
+    private static long sizeOf(String text) {
+        // 按 UTF-16 估算内存占用，避免为统计再编码一次
+        return (long) text.length() * 2;
+    }
+
+}
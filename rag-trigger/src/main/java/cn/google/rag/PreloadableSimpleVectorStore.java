@@ -0,0 +1,164 @@
+package cn.google.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.core.io.Resource;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 支持直接装载已有向量的内存向量存储
+ * <p>
+ * SimpleVectorStore#add 会为每个文档调用一次嵌入模型；从快照导入时文档已带有向量，
+ * 通过 {@link #preload(List)} 直接写入内存索引，不产生任何模型调用。
+ * <p>
+ * SimpleVectorStore 不支持元数据过滤；这里为所有文档维护 {@link MetadataBitmapIndex}，
+ * 带过滤条件的检索先按位图求出候选文档，再只对候选文档计算相似度。
+ * <p>
+ * 装载进来的知识库由检索入口（{@link ReadOnlyPgVectorStore#similaritySearch(MetadataFilter, SearchRequest)}、批量问答）
+ * 直接在内存中检索，不再访问 PostgreSQL；内存存储只在本节点有效。
+ *
+ */
+public class PreloadableSimpleVectorStore extends SimpleVectorStore {
+
+    private final EmbeddingClient embeddingClient;
+    private final MetadataBitmapIndex metadataIndex = new MetadataBitmapIndex();
+    /** 内存中已有片段的知识库标签 */
+    private final Set<String> knowledgeTags = ConcurrentHashMap.newKeySet();
+
+    public PreloadableSimpleVectorStore(EmbeddingClient embeddingClient) {
+        super(embeddingClient);
+        this.embeddingClient = embeddingClient;
+    }
+
+    /**
+     * 查询向量化所用嵌入模型的维度
+     */
+    public int dimensions() {
+        return embeddingClient.dimensions();
+    }
+
+    /**
+     * 装载已带向量的文档，同ID覆盖
+     *
+     * @param documents 已设置 embedding 的文档
+     */
+    public void preload(List<Document> documents) {
+        for (Document document : documents) {
+            if (document.getEmbedding() == null || document.getEmbedding().isEmpty()) {
+                throw new IllegalArgumentException("文档缺少向量 id=" + document.getId());
+            }
+            this.store.put(document.getId(), document);
+            index(document);
+        }
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        super.add(documents);
+        for (Document document : documents) {
+            index(document);
+        }
+    }
+
+    @Override
+    public Optional<Boolean> delete(List<String> idList) {
+        Optional<Boolean> result = super.delete(idList);
+        for (String id : idList) {
+            metadataIndex.remove(id);
+        }
+        return result;
+    }
+
+    @Override
+    public void load(File file) {
+        super.load(file);
+        rebuildIndex();
+    }
+
+    @Override
+    public void load(Resource resource) {
+        super.load(resource);
+        rebuildIndex();
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        if (request.getFilterExpression() == null) return super.similaritySearch(request);
+        return similaritySearch(embeddingClient.embed(request.getQuery()), request.getFilterExpression(),
+                request.getTopK(), request.getSimilarityThreshold());
+    }
+
+    /**
+     * 以已计算的查询向量检索，供批量问答等已批量向量化的调用方使用
+     *
+     * @param query     查询向量
+     * @param filter    过滤条件（未转义的 {@link MetadataFilter#expression()}）
+     * @param topK      返回条数
+     * @param threshold 相似度阈值
+     * @return 相似文档
+     */
+    public List<Document> similaritySearch(List<Double> query, Filter.Expression filter, int topK, double threshold) {
+        List<Document> candidates = metadataIndex.select(filter);
+        if (candidates.isEmpty()) return List.of();
+        return candidates.stream()
+                .map(document -> new Scored(document, cosineSimilarity(query, document.getEmbedding())))
+                .filter(scored -> scored.score() >= threshold)
+                .sorted(Comparator.comparingDouble(Scored::score).reversed())
+                .limit(topK)
+                .map(Scored::document)
+                .toList();
+    }
+
+    /**
+     * 知识库是否已装载进内存
+     */
+    public boolean containsKnowledge(String ragTag) {
+        return ragTag != null && knowledgeTags.contains(ragTag);
+    }
+
+    /**
+     * 内存索引中的文档数
+     */
+    public int size() {
+        return this.store.size();
+    }
+
+    private void rebuildIndex() {
+        metadataIndex.clear();
+        knowledgeTags.clear();
+        for (Document document : this.store.values()) {
+            index(document);
+        }
+    }
+
+    private void index(Document document) {
+        metadataIndex.put(document);
+        Object knowledge = document.getMetadata().get(ChunkUpserter.METADATA_KNOWLEDGE);
+        if (knowledge != null) knowledgeTags.add(knowledge.toString());
+    }
+
+    private static double cosineSimilarity(List<Double> a, List<Double> b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.size(); i++) {
+            double x = a.get(i);
+            double y = b.get(i);
+            dot += x * y;
+            normA += x * x;
+            normB += y * y;
+        }
+        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    private record Scored(Document document, double score) {
+    }
+
+}
@@ -0,0 +1,96 @@
+package cn.google.rag;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * RAG提示词组装
+ * <p>
+ * 消息按前缀稳定的顺序排列：固定系统指令 → 检索到的文档上下文 → 历史对话 → 本轮问题。
+ * 变化最频繁的用户问题放在最后，相同知识库、相同上下文的请求共享最长的公共前缀，
+ * 模型侧的提示词 / KV 缓存得以复用，多轮对话只需预填充新增的部分。
+ * Ollama / OpenAI 控制器共用，同时作为基准测试的被测对象。
+ *
+ */
+public final class RagPromptAssembler {
+
+    /**
+     * 固定系统指令，不含任何随请求变化的内容
+     */
+    public static final String SYSTEM_PROMPT = """
+            Use the information from the DOCUMENTS section to provide accurate answers but act as if you knew this information innately.
+            If unsure, simply state that you don't know.
+            Another thing you need to note is that your reply must be in Chinese!
+            """;
+
+    /** 文档上下文前缀 */
+    public static final String DOCUMENTS_HEADER = "DOCUMENTS:\n";
+
+    /** 多轮对话中本轮新检索到、未在固定上下文中出现的文档，随问题一起放在最后 */
+    public static final String ADDITIONAL_DOCUMENTS_HEADER = "ADDITIONAL DOCUMENTS:\n";
+    public static final String QUESTION_HEADER = "QUESTION:\n";
+
+    private static final String DOCUMENT_SEPARATOR = "\n\n";
+
+    private RagPromptAssembler() {
+    }
+
+    /**
+     * 构建单轮消息列表：系统指令 + 文档上下文 + 用户问题
+     *
+     * @param message   用户输入的消息
+     * @param documents 检索到的文档
+     * @return 消息列表
+     */
+    public static List<Message> assemble(String message, List<Document> documents) {
+        return assemble(contents(documents), List.of(), new UserMessage(message));
+    }
+
+    /**
+     * 构建多轮消息列表：系统指令 + 固定文档上下文 + 历史对话 + 本轮问题
+     *
+     * @param context 会话固定的文档上下文
+     * @param history 历史对话（用户 / 助手消息交替）
+     * @param question 本轮发送给模型的用户消息，见 {@link #question(String, List)}
+     * @return 消息列表
+     */
+    public static List<Message> assemble(List<String> context, List<Message> history, UserMessage question) {
+        List<Message> messages = new ArrayList<>(history.size() + 3);
+        messages.add(new SystemMessage(SYSTEM_PROMPT));
+        messages.add(new SystemMessage(DOCUMENTS_HEADER + String.join(DOCUMENT_SEPARATOR, context)));
+        messages.addAll(history);
+        messages.add(question);
+        return messages;
+    }
+
+    /**
+     * 构建本轮用户消息，存在补充文档时置于问题之前
+     *
+     * @param message             用户输入的消息
+     * @param additionalDocuments 不在固定上下文中的补充文档
+     * @return 用户消息
+     */
+    public static UserMessage question(String message, List<String> additionalDocuments) {
+        if (additionalDocuments.isEmpty()) return new UserMessage(message);
+        return new UserMessage(ADDITIONAL_DOCUMENTS_HEADER + String.join(DOCUMENT_SEPARATOR, additionalDocuments)
+                + DOCUMENT_SEPARATOR + QUESTION_HEADER + message);
+    }
+
+    /**
+     * 提取文档内容并去重，保持检索顺序
+     */
+    public static List<String> contents(List<Document> documents) {
+        LinkedHashSet<String> contents = new LinkedHashSet<>();
+        for (Document document : documents) {
+            contents.add(document.getContent());
+        }
+        return new ArrayList<>(contents);
+    }
+
+}
@@ -0,0 +1,96 @@
+package cn.google.rag;
+
+import cn.google.metrics.RagMetrics;
+import cn.google.request.RagFilter;
+import cn.google.stream.GenerationGuard;
+import jakarta.annotation.Resource;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 会话式 RAG 对话
+ * <p>
+ * 首轮检索结果固定为会话上下文；之后每轮仍然检索，但只把固定上下文中没有的文档随问题一起放在最后，
+ * 系统指令、固定上下文和历史对话保持原样，使本轮提示词是上一轮提示词加回复的延续，模型只需预填充新增部分。
+ *
+ */
+@Component
+public class RagSessionChat {
+
+    @Resource
+    private ReadOnlyPgVectorStore readPgVectorStore;
+    @Resource
+    private ConversationStore conversationStore;
+    @Resource
+    private RagMetrics ragMetrics;
+    @Resource
+    private GenerationGuard generationGuard;
+
+    /**
+     * 执行一轮会话对话
+     *
+     * @param endpoint       接口名，用于指标
+     * @param provider       模型提供方
+     * @param model          模型名称
+     * @param ragTag         知识库标签
+     * @param conversationId 会话ID
+     * @param message        用户输入的消息
+     * @param filter         附加的元数据过滤条件，可为 null
+     * @param generator      以消息列表发起流式生成
+     * @return 流式回复，正常结束后保存本轮对话
+     */
+    public Flux<ChatResponse> stream(String endpoint, String provider, String model, String ragTag, String conversationId, String message,
+                                     RagFilter filter, Function<List<Message>, Flux<ChatResponse>> generator) {
+        // 会话读取、检索与提示词组装在订阅后执行，客户端在此期间断开时不再发起生成
+        Mono<List<Message>> prepared = generationGuard.retrieval(() -> {
+            ConversationStore.Session session = conversationStore.load(conversationId, ragTag);
+
+            // 在指定知识库中检索相关文档
+            SearchRequest request = SearchRequest.query(message)
+                    .withTopK(5);  // 检索前5个最相关的文档
+            MetadataFilter metadataFilter = MetadataFilter.knowledge(ragTag).and(filter);  // 过滤指定知识库及附加条件
+            List<Document> documents = ragMetrics.timeRetrieval(provider, model, ragTag, () -> readPgVectorStore.similaritySearch(metadataFilter, request));
+
+            return ragMetrics.timePromptAssembly(provider, model, ragTag, () -> {
+                List<String> retrieved = RagPromptAssembler.contents(documents);
+                List<String> context = session.context().isEmpty()
+                        ? conversationStore.pinContext(conversationId, ragTag, retrieved)
+                        : session.context();
+
+                Set<String> pinned = new HashSet<>(context);
+                List<String> additional = new ArrayList<>();
+                for (String content : retrieved) {
+                    if (!pinned.contains(content)) additional.add(content);
+                }
+                UserMessage question = RagPromptAssembler.question(message, additional);
+                return RagPromptAssembler.assemble(context, session.history(), question);
+            });
+        });
+
+        return prepared.flatMapMany(messages -> {
+            String sentQuestion = messages.get(messages.size() - 1).getContent();
+            StringBuilder answer = new StringBuilder();
+            return ragMetrics.observeStream(endpoint, provider, model, ragTag, generator.apply(messages))
+                    .doOnNext(response -> {
+                        if (response.getResult() != null && response.getResult().getOutput() != null && response.getResult().getOutput().getContent() != null) {
+                            answer.append(response.getResult().getOutput().getContent());
+                        }
+                    })
+                    // 被取消或超时终止的回复不保存
+                    .doOnComplete(() -> conversationStore.append(conversationId, ragTag, sentQuestion, answer.toString()));
+        });
+    }
+
+}
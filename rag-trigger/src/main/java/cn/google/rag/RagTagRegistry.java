@@ -0,0 +1,252 @@
+package cn.google.rag;
+
+import cn.google.response.RagTagStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RList;
+import org.redisson.api.RMap;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RScript;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.codec.CompositeCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 知识库标签注册表
+ * <p>
+ * 标签保存在 Redis Set 中，注册使用 SADD 原子完成，无需先 contains 再 add；
+ * 每个标签的统计信息（文档数、片段数、字节数、最后更新时间）保存在独立 Hash 中，通过 MULTI/EXEC 批量原子更新。
+ * <p>
+ * 本地维护一份近端缓存：标签列表快照（附带版本号，用作列表接口的 ETag）与统计信息。
+ * 任一节点修改后通过 Redis 发布订阅广播失效消息，各节点清空对应缓存，下次读取时重新加载。
+ * 发布订阅不保证送达（如断线重连期间的消息会丢失），因此缓存另设有效期（rag.tag-registry.cache-ttl-ms），过期后重新加载。
+ *
+ */
+@Slf4j
+@Component
+public class RagTagRegistry {
+
+    /** 旧版本使用的 RList 键，启动时一次性迁移 */
+    private static final String LEGACY_LIST_KEY = "ragTag";
+    private static final String SET_KEY = "ragTag:set";
+    private static final String VERSION_KEY = "ragTag:version";
+    private static final String STATS_KEY_PREFIX = "ragTag:stats:";
+    private static final String TOPIC_KEY = "ragTag:invalidate";
+    /** 广播该值表示标签列表发生变化，其余值为发生变化的标签 */
+    private static final String ALL = "*";
+
+    private static final String FIELD_DOCUMENTS = "documentCount";
+    private static final String FIELD_CHUNKS = "chunkCount";
+    private static final String FIELD_BYTES = "bytes";
+    private static final String FIELD_LAST_UPDATED = "lastUpdated";
+
+    /** 标签不存在时 SADD 并递增版本号，两步在一个脚本内原子完成 */
+    private static final String REGISTER_SCRIPT =
+            "if redis.call('SADD', KEYS[1], ARGV[1]) == 1 then redis.call('INCR', KEYS[2]) return 1 end return 0";
+
+    private static final Codec STATS_CODEC = new CompositeCodec(StringCodec.INSTANCE, LongCodec.INSTANCE);
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Value("${rag.tag-registry.cache-ttl-ms:30000}")
+    private long cacheTtlMs;
+
+    private volatile Cached<TagSnapshot> snapshot;
+    /** 失效计数，防止加载期间收到的失效消息被加载结果覆盖 */
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Map<String, Cached<RagTagStats>> statsCache = new ConcurrentHashMap<>();
+    private RTopic topic;
+    private int listenerId;
+
+    /**
+     * 标签列表快照
+     *
+     * @param version 版本号，每次新增标签递增
+     * @param tags    标签列表（不可变）
+     */
+    public record TagSnapshot(long version, List<String> tags) {
+
+        public String etag() {
+            return "\"ragTag-" + version + "\"";
+        }
+
+    }
+
+    /**
+     * 带过期时间的缓存项
+     */
+    private record Cached<T>(T value, long expiresAt) {
+
+        boolean expired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+
+    }
+
+    @PostConstruct
+    public void init() {
+        migrateLegacyList();
+        topic = redissonClient.getTopic(TOPIC_KEY, StringCodec.INSTANCE);
+        listenerId = topic.addListener(String.class, (channel, ragTag) -> invalidateLocal(ragTag));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (topic != null) topic.removeListener(listenerId);
+    }
+
+    /**
+     * 注册知识库标签
+     *
+     * @param ragTag 知识库标签
+     * @return 是否为新标签
+     */
+    public boolean register(String ragTag) {
+        Long result = redissonClient.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, REGISTER_SCRIPT,
+                RScript.ReturnType.INTEGER, List.of(SET_KEY, VERSION_KEY), ragTag);
+        boolean added = result != null && result == 1L;
+        if (added) {
+            invalidateLocal(ALL);
+            topic.publish(ALL);
+        }
+        return added;
+    }
+
+    /**
+     * 累加一次入库的统计信息
+     *
+     * @param ragTag    知识库标签
+     * @param documents 文档数
+     * @param chunks    片段数
+     * @param bytes     字节数
+     */
+    public void recordIngestion(String ragTag, long documents, long chunks, long bytes) {
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults().executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+        RMapAsync<String, Long> stats = batch.getMap(STATS_KEY_PREFIX + ragTag, STATS_CODEC);
+        stats.addAndGetAsync(FIELD_DOCUMENTS, documents);
+        stats.addAndGetAsync(FIELD_CHUNKS, chunks);
+        stats.addAndGetAsync(FIELD_BYTES, bytes);
+        stats.fastPutAsync(FIELD_LAST_UPDATED, System.currentTimeMillis());
+        batch.execute();
+
+        invalidateLocal(ragTag);
+        topic.publish(ragTag);
+    }
+
+    /**
+     * 以统计值覆盖知识库的统计信息（用于按向量表重新统计后写入，重复执行结果不变）
+     *
+     * @param ragTag    知识库标签
+     * @param documents 文档数
+     * @param chunks    片段数
+     * @param bytes     字节数
+     */
+    public void resetIngestion(String ragTag, long documents, long chunks, long bytes) {
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults().executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+        RMapAsync<String, Long> stats = batch.getMap(STATS_KEY_PREFIX + ragTag, STATS_CODEC);
+        stats.fastPutAsync(FIELD_DOCUMENTS, documents);
+        stats.fastPutAsync(FIELD_CHUNKS, chunks);
+        stats.fastPutAsync(FIELD_BYTES, bytes);
+        stats.fastPutAsync(FIELD_LAST_UPDATED, System.currentTimeMillis());
+        batch.execute();
+
+        invalidateLocal(ragTag);
+        topic.publish(ragTag);
+    }
+
+    /**
+     * 查询标签列表快照，优先读取本地缓存
+     */
+    public TagSnapshot snapshot() {
+        Cached<TagSnapshot> current = snapshot;
+        if (current != null && !current.expired()) return current.value();
+        long generation = invalidations.get();
+        long version = redissonClient.getAtomicLong(VERSION_KEY).get();
+        List<String> tags = new ArrayList<>(redissonClient.<String>getSet(SET_KEY, StringCodec.INSTANCE).readAll());
+        Collections.sort(tags);
+        TagSnapshot loaded = new TagSnapshot(version, Collections.unmodifiableList(tags));
+        synchronized (this) {
+            if (generation == invalidations.get()) {
+                snapshot = new Cached<>(loaded, System.currentTimeMillis() + cacheTtlMs);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 判断标签是否已注册
+     */
+    public boolean contains(String ragTag) {
+        return snapshot().tags().contains(ragTag);
+    }
+
+    /**
+     * 查询标签统计信息，优先读取本地缓存
+     */
+    public RagTagStats stats(String ragTag) {
+        Cached<RagTagStats> cached = statsCache.get(ragTag);
+        if (cached != null && !cached.expired()) return cached.value();
+
+        // 在 Map 之外读取 Redis，避免网络往返期间占住 ConcurrentHashMap 的桶
+        long generation = invalidations.get();
+        RMap<String, Long> map = redissonClient.getMap(STATS_KEY_PREFIX + ragTag, STATS_CODEC);
+        Map<String, Long> values = map.readAllMap();
+        RagTagStats stats = RagTagStats.builder()
+                .ragTag(ragTag)
+                .documentCount(values.getOrDefault(FIELD_DOCUMENTS, 0L))
+                .chunkCount(values.getOrDefault(FIELD_CHUNKS, 0L))
+                .bytes(values.getOrDefault(FIELD_BYTES, 0L))
+                .lastUpdated(values.getOrDefault(FIELD_LAST_UPDATED, 0L))
+                .build();
+        Cached<RagTagStats> loaded = new Cached<>(stats, System.currentTimeMillis() + cacheTtlMs);
+        // 加载期间收到失效消息时不写入缓存，避免旧值覆盖
+        synchronized (this) {
+            if (generation == invalidations.get()) statsCache.put(ragTag, loaded);
+        }
+        return stats;
+    }
+
+    private void invalidateLocal(String ragTag) {
+        synchronized (this) {
+            invalidations.incrementAndGet();
+            if (ALL.equals(ragTag)) {
+                snapshot = null;
+            } else {
+                statsCache.remove(ragTag);
+            }
+        }
+    }
+
+    /**
+     * 将旧版 RList 中的标签合并进 Set，合并后删除旧键
+     */
+    private void migrateLegacyList() {
+        RList<String> legacy = redissonClient.getList(LEGACY_LIST_KEY);
+        if (!legacy.isExists()) return;
+        List<String> tags = legacy.readAll();
+        if (!tags.isEmpty()) {
+            redissonClient.<String>getSet(SET_KEY, StringCodec.INSTANCE).addAll(tags);
+            redissonClient.getAtomicLong(VERSION_KEY).incrementAndGet();
+        }
+        legacy.delete();
+        log.info("知识库标签迁移完成，共 {} 个", tags.size());
+    }
+
+}
@@ -0,0 +1,258 @@
+package cn.google.rag;
+
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.ai.vectorstore.PgVectorStore;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 启动预热与就绪判定
+ * <p>
+ * 应用启动完成（ApplicationReadyEvent）后在后台依次执行：
+ * <ol>
+ *     <li>连接池：并发获取读写两个数据库连接池与 Redis 的连接，建立到配置数量</li>
+ *     <li>模型：预加载配置的 Ollama 对话模型并设置 keep_alive</li>
+ *     <li>索引：对热门知识库以库内片段作为查询执行检索，同时预热嵌入模型；安装了 pg_prewarm 时预读向量表与索引</li>
+ *     <li>解析：反复执行文本与 Tika 两条解析路径及文本分割（达到次数或时间上限为止），使热点方法达到 JIT 编译阈值；
+ *     不读写解析缓存</li>
+ * </ol>
+ * 预热完成前本健康指标为 OUT_OF_SERVICE。将其加入 readiness 健康组后，/actuator/health/readiness
+ * 在预热完成前返回 503，负载均衡只会把流量转发到已预热的节点。单个步骤失败只记录在健康详情中，不阻塞就绪。
+ *
+ */
+@Slf4j
+@Component
+public class RagWarmup implements HealthIndicator {
+
+    private static final String SYNTHETIC_TEXT = """
+            RAG 知识库预热文本。Retrieval augmented generation warm-up paragraph.
+            王大瓜，1990年出生，是一名软件工程师。The quick brown fox jumps over the lazy dog.
+            """;
+
+    @Resource
+    private DataSource writeDataSource;
+    @Resource
+    private DataSource readDataSource;
+    @Resource
+    private JdbcTemplate readJdbcTemplate;
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private ReadOnlyPgVectorStore readPgVectorStore;
+    @Resource
+    private TokenTextSplitter tokenTextSplitter;
+    @Resource
+    private RagTagRegistry ragTagRegistry;
+    @Resource
+    private OllamaKeepAlive ollamaKeepAlive;
+    @Resource
+    private DocumentReaderRegistry documentReaderRegistry;
+
+    @Value("${rag.warmup.enabled:true}")
+    private boolean enabled;
+    @Value("${rag.warmup.ollama-models:}")
+    private List<String> ollamaModels;
+    @Value("${rag.warmup.rag-tags:}")
+    private List<String> ragTags;
+    @Value("${rag.warmup.hot-tag-limit:5}")
+    private int hotTagLimit;
+    @Value("${rag.warmup.queries-per-tag:3}")
+    private int queriesPerTag;
+    @Value("${rag.warmup.db-connections:5}")
+    private int dbConnections;
+    @Value("${rag.warmup.redis-connections:5}")
+    private int redisConnections;
+    @Value("${rag.warmup.parse-iterations:200}")
+    private int parseIterations;
+    @Value("${rag.warmup.parse-max-ms:15000}")
+    private long parseMaxMs;
+
+    private volatile boolean done;
+    private volatile String currentStep = "pending";
+    private final Map<String, Object> details = new LinkedHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            done = true;
+            return;
+        }
+        Thread thread = new Thread(this::run, "rag-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public Health health() {
+        Map<String, Object> snapshot;
+        synchronized (details) {
+            snapshot = new LinkedHashMap<>(details);
+        }
+        if (done) return Health.up().withDetails(snapshot).build();
+        return Health.outOfService().withDetail("step", currentStep).withDetails(snapshot).build();
+    }
+
+    private void run() {
+        long start = System.currentTimeMillis();
+        step("pools", this::primePools);
+        step("models", this::preloadModels);
+        step("indexes", this::warmIndexes);
+        step("parse", this::exercisePipeline);
+        record("elapsedMs", System.currentTimeMillis() - start);
+        done = true;
+        currentStep = "done";
+        log.info("启动预热完成 {}", details);
+    }
+
+    private void step(String name, StepBody body) {
+        currentStep = name;
+        long start = System.currentTimeMillis();
+        try {
+            Object result = body.run();
+            record(name, result + " (" + (System.currentTimeMillis() - start) + "ms)");
+        } catch (Exception e) {
+            log.warn("启动预热步骤失败 step={}", name, e);
+            record(name, "failed: " + e.getMessage());
+        }
+    }
+
+    private void record(String key, Object value) {
+        synchronized (details) {
+            details.put(key, value);
+        }
+    }
+
+    /**
+     * 同时持有多个数据库连接，使读写两个连接池一次建立到目标数量；并发访问 Redis 建立连接
+     */
+    private Object primePools() throws Exception {
+        int write = primeDataSource(writeDataSource);
+        int read = primeDataSource(readDataSource);
+
+        List<CompletableFuture<?>> futures = new ArrayList<>(redisConnections);
+        for (int i = 0; i < redisConnections; i++) {
+            futures.add(redissonClient.getAtomicLong("rag:warmup").getAsync().toCompletableFuture());
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        ragTagRegistry.snapshot();
+        return "db.write=" + write + " db.read=" + read + " redis=" + futures.size();
+    }
+
+    private int primeDataSource(DataSource dataSource) throws Exception {
+        List<Connection> connections = new ArrayList<>(dbConnections);
+        try {
+            for (int i = 0; i < dbConnections; i++) {
+                Connection connection = dataSource.getConnection();
+                connections.add(connection);
+                connection.isValid(5);
+            }
+        } finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+        return connections.size();
+    }
+
+    private Object preloadModels() {
+        int loaded = 0;
+        for (String model : ollamaModels) {
+            if (model.isBlank()) continue;
+            if (ollamaKeepAlive.preload(model.trim())) loaded++;
+        }
+        return "ollama=" + loaded + "/" + ollamaModels.stream().filter(m -> !m.isBlank()).count();
+    }
+
+    /**
+     * 以库内片段内容作为查询，检索路径与线上一致（读库连接池上的查询向量化 + 带过滤条件的相似度检索）
+     */
+    private Object warmIndexes() {
+        prewarmRelations();
+
+        List<String> tags = hotTags();
+        int queries = 0;
+        // 没有知识库时也执行一次检索，预热嵌入模型
+        if (tags.isEmpty()) {
+            readPgVectorStore.similaritySearch(SearchRequest.query(SYNTHETIC_TEXT).withTopK(1));
+            queries++;
+        }
+        for (String tag : tags) {
+            List<String> samples = readJdbcTemplate.queryForList(
+                    "SELECT left(content, 200) FROM " + PgVectorStore.VECTOR_TABLE_NAME + " WHERE metadata->>'knowledge' = ? LIMIT ?",
+                    String.class, tag, queriesPerTag);
+            if (samples.isEmpty()) samples = List.of(SYNTHETIC_TEXT);
+            for (String sample : samples) {
+                readPgVectorStore.similaritySearch(MetadataFilter.knowledge(tag), SearchRequest.query(sample).withTopK(5));
+                queries++;
+            }
+        }
+        return "tags=" + tags + " queries=" + queries;
+    }
+
+    /**
+     * 安装了 pg_prewarm 扩展时，将向量表及其索引读入共享缓冲区
+     */
+    private void prewarmRelations() {
+        Integer installed = readJdbcTemplate.queryForObject("SELECT count(*) FROM pg_extension WHERE extname = 'pg_prewarm'", Integer.class);
+        if (installed == null || installed == 0) return;
+        List<String> relations = readJdbcTemplate.queryForList(
+                "SELECT indexrelid::regclass::text FROM pg_index WHERE indrelid = to_regclass(?)", String.class, PgVectorStore.VECTOR_TABLE_NAME);
+        readJdbcTemplate.queryForObject("SELECT pg_prewarm(?::regclass)", Long.class, PgVectorStore.VECTOR_TABLE_NAME);
+        for (String relation : relations) {
+            readJdbcTemplate.queryForObject("SELECT pg_prewarm(?::regclass)", Long.class, relation);
+        }
+        record("pg_prewarm", relations.size() + 1);
+    }
+
+    /**
+     * 配置了知识库时使用配置，否则按片段数取前 N 个
+     */
+    private List<String> hotTags() {
+        List<String> configured = ragTags.stream().filter(tag -> !tag.isBlank()).map(String::trim).toList();
+        if (!configured.isEmpty()) return configured;
+        return ragTagRegistry.snapshot().tags().stream()
+                .sorted(Comparator.comparingLong((String tag) -> ragTagRegistry.stats(tag).getChunkCount()).reversed())
+                .limit(hotTagLimit)
+                .toList();
+    }
+
+    private Object exercisePipeline() {
+        byte[] bytes = SYNTHETIC_TEXT.repeat(200).getBytes(StandardCharsets.UTF_8);
+        int chunks = 0;
+        long deadline = System.currentTimeMillis() + parseMaxMs;
+        int i = 0;
+        for (; i < parseIterations && System.currentTimeMillis() < deadline; i++) {
+            List<Document> documents = documentReaderRegistry.read("warmup.md", bytes, false).documents();
+            chunks += tokenTextSplitter.apply(documents).size();
+            // 无扩展名且不在已知文件名中，走 Tika 路径；不读写解析缓存，每次都实际解析，也不把合成文档写入共享缓存
+            documentReaderRegistry.read("warmup", bytes, false);
+        }
+        return "iterations=" + i + " chunks=" + chunks;
+    }
+
+    @FunctionalInterface
+    private interface StepBody {
+        Object run() throws Exception;
+    }
+
+}
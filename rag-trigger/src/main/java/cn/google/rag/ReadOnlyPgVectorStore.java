@@ -0,0 +1,104 @@
+package cn.google.rag;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.vectorstore.PgVectorFilterExpressionConverter;
+import org.springframework.ai.vectorstore.PgVectorStore;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 只用于相似度检索的 PgVectorStore，连接读库连接池（可指向 pgvector 只读副本）
+ * <p>
+ * PgVectorStore 初始化时会执行 CREATE EXTENSION / CREATE TABLE / CREATE INDEX，只读副本上这些语句会直接报错；
+ * 建表与建索引由写库上的 PgVectorStore 完成，这里跳过初始化。写入方法不应在此实例上调用。
+ * <p>
+ * 按知识库检索时应调用 {@link #similaritySearch(MetadataFilter, SearchRequest)}：切换嵌入模型期间，
+ * 已切换的知识库按 {@link EmbeddingRoutes} 的路由改用影子表与新模型检索；以快照装载进内存的知识库在内存中检索。
+ * 过滤条件按目标存储各转换一次：内存存储使用未转义的表达式，PostgreSQL 使用转义后的表达式。
+ *
+ */
+public class ReadOnlyPgVectorStore extends PgVectorStore {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingRoutes embeddingRoutes;
+    private final EmbeddingClients embeddingClients;
+    private final PreloadableSimpleVectorStore memoryStore;
+    private final PgVectorFilterExpressionConverter filterExpressionConverter = new PgVectorFilterExpressionConverter();
+
+    public ReadOnlyPgVectorStore(JdbcTemplate jdbcTemplate, EmbeddingClient embeddingClient, EmbeddingRoutes embeddingRoutes,
+                                 EmbeddingClients embeddingClients, PreloadableSimpleVectorStore memoryStore) {
+        super(jdbcTemplate, embeddingClient);
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingRoutes = embeddingRoutes;
+        this.embeddingClients = embeddingClients;
+        this.memoryStore = memoryStore;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // 表结构由写库实例维护
+    }
+
+    /**
+     * 在指定知识库中检索：已从快照装载进内存的知识库在内存中检索，其余按该知识库的路由选择向量表与嵌入模型
+     *
+     * @param filter  过滤条件，须以 {@link MetadataFilter#knowledge(String)} 限定知识库
+     * @param request 检索请求，其中的过滤表达式会被 filter 替换
+     * @return 相似文档
+     */
+    public List<Document> similaritySearch(MetadataFilter filter, SearchRequest request) {
+        String ragTag = filter.knowledgeTag();
+        if (memoryStore.containsKnowledge(ragTag)) {
+            return memoryStore.similaritySearch(SearchRequest.from(request).withFilterExpression(filter.expression()));
+        }
+        SearchRequest pgRequest = SearchRequest.from(request).withFilterExpression(filter.pgVectorExpression());
+        EmbeddingRoutes.Route route = embeddingRoutes.route(ragTag);
+        if (embeddingRoutes.isPrimary(route)) return similaritySearch(pgRequest);
+        List<Double> embedding = embeddingClients.get(route.model()).embed(request.getQuery());
+        return search(route.table(), embedding, pgRequest);
+    }
+
+    /**
+     * 与 PgVectorStore 相同的余弦距离检索，向量表由路由决定
+     */
+    private List<Document> search(String table, List<Double> embedding, SearchRequest request) {
+        String filter = request.getFilterExpression() == null ? ""
+                : " AND metadata::jsonb @@ '" + filterExpressionConverter.convertExpression(request.getFilterExpression()) + "'::jsonpath";
+        String vector = BatchRagService.formatVector(embedding);
+        return jdbcTemplate.query(
+                "SELECT id::text AS id, content, metadata::text AS metadata, embedding <=> ?::vector AS distance FROM " + table +
+                        " WHERE embedding <=> ?::vector < ?" + filter + " ORDER BY distance LIMIT ?",
+                (rs, rowNum) -> {
+                    Map<String, Object> metadata = parseMetadata(rs.getString("metadata"));
+                    metadata.put("distance", rs.getFloat("distance"));
+                    return new Document(rs.getString("id"), rs.getString("content"), metadata);
+                },
+                vector, vector, 1 - request.getSimilarityThreshold(), request.getTopK());
+    }
+
+    /**
+     * 解析元数据列（json 文本）
+     */
+    static Map<String, Object> parseMetadata(String json) {
+        if (json == null) return new HashMap<>();
+        try {
+            return new HashMap<>(OBJECT_MAPPER.readValue(json, METADATA_TYPE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
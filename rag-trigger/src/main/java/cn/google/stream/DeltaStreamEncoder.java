@@ -0,0 +1,189 @@
+package cn.google.stream;
+
+import cn.google.metrics.RagMetrics;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.Resource;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.Generation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 流式对话的紧凑增量格式（format=delta）
+ * <p>
+ * 默认格式下每个 ChatResponse 片段（往往只有一个 token）都会完整序列化 result / metadata 等包装结构。
+ * 增量格式只输出新增文本，并按刷新间隔或字节阈值合并多个 token 后再写出一个事件：
+ * <pre>
+ * data:{"d":"合并后的文本"}
+ *
+ * event:done
+ * data:{"n":输出 token 数,"f":"STOP"}
+ * </pre>
+ * 流中定期插入心跳注释行（":"），在没有输出的阶段（检索、模型加载、预填充）客户端断开也会因写出失败被发现，
+ * 订阅随之取消，取消信号传到上游的检索与模型调用。每个流结束时记录写出字节数与刷新次数。
+ *
+ */
+@Component
+public class DeltaStreamEncoder {
+
+    public static final String FORMAT = "delta";
+    public static final String EVENT_DONE = "done";
+
+    /** SSE 帧固定开销："data:" + 结尾空行 */
+    private static final int FRAME_OVERHEAD = 7;
+    private static final ServerSentEvent<String> HEARTBEAT = ServerSentEvent.<String>builder().comment("").build();
+
+    @Resource
+    private RagMetrics ragMetrics;
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Value("${rag.stream.delta.flush-interval-ms:50}")
+    private long flushIntervalMs;
+    @Value("${rag.stream.delta.flush-bytes:256}")
+    private int flushBytes;
+    @Value("${rag.stream.heartbeat-ms:15000}")
+    private long heartbeatMs;
+
+    /**
+     * 将模型输出流编码为增量事件流
+     *
+     * @param endpoint 接口名，用于指标标签
+     * @param provider 模型提供方
+     * @param flux     模型输出流
+     * @return SSE 事件流
+     */
+    public Flux<ServerSentEvent<String>> encode(String endpoint, String provider, Flux<ChatResponse> flux) {
+        return Flux.defer(() -> {
+            AtomicLong tokens = new AtomicLong();
+            AtomicLong bytes = new AtomicLong();
+            AtomicLong flushes = new AtomicLong();
+            AtomicReference<String> finishReason = new AtomicReference<>();
+
+            Flux<String> deltas = flux
+                    .doOnNext(response -> {
+                        String reason = finishReason(response);
+                        if (reason != null && !reason.isEmpty()) finishReason.set(reason);
+                    })
+                    .map(DeltaStreamEncoder::content)
+                    .filter(content -> !content.isEmpty())
+                    .doOnNext(content -> tokens.incrementAndGet());
+
+            Flux<ServerSentEvent<String>> events = coalesce(deltas, Duration.ofMillis(flushIntervalMs), flushBytes)
+                    .map(chunk -> ServerSentEvent.builder(json(Map.of("d", chunk))).build());
+
+            Flux<ServerSentEvent<String>> done = Flux.defer(() -> {
+                Map<String, Object> summary = new LinkedHashMap<>();
+                summary.put("n", tokens.get());
+                if (finishReason.get() != null) summary.put("f", finishReason.get());
+                return Flux.just(ServerSentEvent.<String>builder(json(summary)).event(EVENT_DONE).build());
+            });
+
+            Flux<ServerSentEvent<String>> body = events.concatWith(done);
+            if (heartbeatMs > 0) {
+                body = Flux.merge(body, Flux.interval(Duration.ofMillis(heartbeatMs)).map(tick -> HEARTBEAT))
+                        .takeUntil(event -> EVENT_DONE.equals(event.event()));
+            }
+
+            return body
+                    .doOnNext(event -> {
+                        flushes.incrementAndGet();
+                        int eventBytes = event.data() == null ? 0 : event.data().getBytes(StandardCharsets.UTF_8).length;
+                        int nameBytes = event.event() == null ? 0 : event.event().length() + 7;
+                        bytes.addAndGet(eventBytes + nameBytes + FRAME_OVERHEAD);
+                    })
+                    .doFinally(signal -> ragMetrics.recordStreamWire(endpoint, provider, FORMAT, bytes.get(), flushes.get()));
+        });
+    }
+
+    /**
+     * 合并文本片段：缓冲区字节数达到阈值立即写出，否则在首个片段进入缓冲区后的刷新间隔到期时写出。
+     * 刷新间隔为 0 时不合并。发射在锁内完成，保证定时刷新与阈值刷新之间的顺序。
+     */
+    static Flux<String> coalesce(Flux<String> source, Duration interval, int maxBytes) {
+        if (interval.isZero() || interval.isNegative()) return source;
+        return Flux.create(sink -> {
+            Object lock = new Object();
+            StringBuilder buffer = new StringBuilder();
+            int[] buffered = {0};
+            Disposable[] timer = {null};
+
+            Runnable flush = () -> {
+                synchronized (lock) {
+                    if (timer[0] != null) {
+                        timer[0].dispose();
+                        timer[0] = null;
+                    }
+                    if (buffer.length() == 0) return;
+                    String chunk = buffer.toString();
+                    buffer.setLength(0);
+                    buffered[0] = 0;
+                    sink.next(chunk);
+                }
+            };
+
+            Disposable upstream = source.subscribe(
+                    content -> {
+                        boolean full;
+                        synchronized (lock) {
+                            buffer.append(content);
+                            buffered[0] += content.getBytes(StandardCharsets.UTF_8).length;
+                            full = buffered[0] >= maxBytes;
+                            if (!full && timer[0] == null) {
+                                timer[0] = Schedulers.parallel().schedule(flush, interval.toMillis(), TimeUnit.MILLISECONDS);
+                            }
+                        }
+                        if (full) flush.run();
+                    },
+                    error -> {
+                        flush.run();
+                        sink.error(error);
+                    },
+                    () -> {
+                        flush.run();
+                        sink.complete();
+                    });
+
+            sink.onDispose(() -> {
+                upstream.dispose();
+                synchronized (lock) {
+                    if (timer[0] != null) timer[0].dispose();
+                }
+            });
+        });
+    }
+
+    private String json(Map<String, ?> value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String content(ChatResponse response) {
+        Generation result = response == null ? null : response.getResult();
+        if (result == null || result.getOutput() == null || result.getOutput().getContent() == null) return "";
+        return result.getOutput().getContent();
+    }
+
+    private static String finishReason(ChatResponse response) {
+        Generation result = response == null ? null : response.getResult();
+        if (result == null || result.getMetadata() == null) return null;
+        return result.getMetadata().getFinishReason();
+    }
+
+}
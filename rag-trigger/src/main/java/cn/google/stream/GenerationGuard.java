@@ -0,0 +1,127 @@
+package cn.google.stream;
+
+import cn.google.metrics.RagMetrics;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 流式生成的取消与超时控制
+ * <p>
+ * 客户端断开后 Spring MVC 在下一次写出失败时取消订阅，取消信号沿 Flux 传到 WebClient，关闭到模型服务的连接，
+ * 模型随之停止生成。本类在此基础上补充：
+ * <ul>
+ *     <li>检索放进订阅内执行（{@link #retrieval(Callable)}），取消发生在检索期间时不再发起生成</li>
+ *     <li>空闲回收：首个片段或相邻片段之间超过各自的超时时间没有输出，取消上游并以超时错误结束；两个超时分别配置、互不影响</li>
+ *     <li>最长生成时间：到期后取消上游，已输出的部分作为回复正常结束</li>
+ *     <li>指标：按原因（client / batch / first-token / idle / deadline）统计取消次数，以及被丢弃回复已生成的 token 数</li>
+ * </ul>
+ * 客户端断开而长时间没有写出时（检索、模型加载与预填充期间）无法被发现，紧凑增量格式为此定期发送心跳注释，
+ * 见 {@link DeltaStreamEncoder}。
+ *
+ */
+@Slf4j
+@Component
+public class GenerationGuard {
+
+    public static final String REASON_CLIENT = "client";
+    /** 批量问答中被整批取消 */
+    public static final String REASON_BATCH = "batch";
+    public static final String REASON_FIRST_TOKEN = "first-token";
+    public static final String REASON_IDLE = "idle";
+    public static final String REASON_DEADLINE = "deadline";
+
+    @Resource
+    private RagMetrics ragMetrics;
+
+    @Value("${rag.generation.first-token-timeout-ms:120000}")
+    private long firstTokenTimeoutMs;
+    @Value("${rag.generation.idle-timeout-ms:30000}")
+    private long idleTimeoutMs;
+    @Value("${rag.generation.max-duration-ms:600000}")
+    private long maxDurationMs;
+
+    /**
+     * 为一次流式生成挂载取消与超时控制，应包在检索与生成的最外层
+     *
+     * @param endpoint 接口名，用于指标
+     * @param provider 模型提供方
+     * @param model    模型名称
+     * @param flux     检索 + 生成的完整流
+     * @return 受控的流
+     */
+    public Flux<ChatResponse> guard(String endpoint, String provider, String model, Flux<ChatResponse> flux) {
+        return guard(endpoint, provider, model, REASON_CLIENT, flux);
+    }
+
+    /**
+     * 为一次流式生成挂载取消与超时控制
+     *
+     * @param endpoint     接口名，用于指标
+     * @param provider     模型提供方
+     * @param model        模型名称
+     * @param cancelReason 被下游取消时记录的原因：单次请求为 client，批量问答中为 batch
+     * @param flux         检索 + 生成的完整流
+     * @return 受控的流
+     */
+    public Flux<ChatResponse> guard(String endpoint, String provider, String model, String cancelReason, Flux<ChatResponse> flux) {
+        return Flux.defer(() -> {
+            AtomicLong tokens = new AtomicLong();
+            AtomicLong received = new AtomicLong();
+            AtomicReference<String> reason = new AtomicReference<>();
+
+            Flux<ChatResponse> guarded = flux.doOnNext(response -> {
+                received.incrementAndGet();
+                if (RagMetrics.hasContent(response)) tokens.incrementAndGet();
+            });
+
+            if (firstTokenTimeoutMs > 0 || idleTimeoutMs > 0) {
+                Mono<Long> first = firstTokenTimeoutMs > 0 ? Mono.delay(Duration.ofMillis(firstTokenTimeoutMs)) : Mono.never();
+                guarded = guarded
+                        .timeout(first, response -> idleTimeoutMs > 0 ? Mono.delay(Duration.ofMillis(idleTimeoutMs)) : Mono.never())
+                        .doOnError(TimeoutException.class, e -> reason.compareAndSet(null, received.get() == 0 ? REASON_FIRST_TOKEN : REASON_IDLE));
+            }
+            if (maxDurationMs > 0) {
+                guarded = guarded.takeUntilOther(Mono.delay(Duration.ofMillis(maxDurationMs))
+                        .doOnNext(tick -> reason.compareAndSet(null, REASON_DEADLINE)));
+            }
+
+            return guarded.doFinally(signal -> {
+                String cause = switch (signal) {
+                    case CANCEL -> cancelReason;
+                    case ON_ERROR, ON_COMPLETE -> reason.get();
+                    default -> null;
+                };
+                if (cause == null) return;
+                // 截断到期的回复已送达客户端，不计为浪费
+                long wasted = REASON_DEADLINE.equals(cause) ? 0 : tokens.get();
+                ragMetrics.recordCancelled(endpoint, provider, model, cause, tokens.get() > 0, wasted);
+                if (!REASON_CLIENT.equals(cause) && !REASON_BATCH.equals(cause)) {
+                    log.warn("流式生成被终止 endpoint={} model={} reason={} tokens={}", endpoint, model, cause, tokens.get());
+                }
+            });
+        });
+    }
+
+    /**
+     * 在订阅时于弹性线程池执行检索；订阅在检索结束前被取消时，后续的提示词组装与生成不会执行
+     *
+     * @param retrieval 检索（及提示词组装）
+     * @return 检索结果
+     */
+    public <T> Mono<T> retrieval(Callable<T> retrieval) {
+        return Mono.fromCallable(retrieval).subscribeOn(Schedulers.boundedElastic());
+    }
+
+}